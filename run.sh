@@ -17,6 +17,8 @@ spiral.maxdepth=2
 gen.merge=true
 color=true
 merge.mindepth=2
+threads=1
+listeners=verbose,progress,metrics
 EOF1
 
 mvn exec:java@solver -Dexec.args="$1 init.properties"
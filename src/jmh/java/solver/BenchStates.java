@@ -0,0 +1,34 @@
+package solver;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+// Reproducible inputs for the benchmarks
+class BenchStates {
+
+    // A search without any listener (and so without any logging)
+    static StochasticBestFirstSearch search(int n, String sampling) {
+        Properties prop = new Properties();
+        prop.setProperty("sampling", sampling);
+        prop.setProperty("gen.spiral", "true");
+        prop.setProperty("gen.merge", "true");
+        prop.setProperty("listeners", "");
+        return new StochasticBestFirstSearch(n, prop);
+    }
+
+    // A state reached from the root by depth random bisections
+    static State randomState(StochasticBestFirstSearch search, int depth, Random rnd) {
+        State x = search.root;
+        while (x.depth < depth) {
+            Rect r = x.getBlock(rnd.nextInt(x.numBlocks()));
+            boolean vertical = rnd.nextBoolean();
+            int len = vertical? r.w: r.h;
+            if (len < 2)
+                continue;
+            List<Rect> children = r.biSectionSplit(vertical, 1 + rnd.nextInt(len-1));
+            x = new State(x, r, children);
+        }
+        return x;
+    }
+}
@@ -0,0 +1,71 @@
+package solver;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cost of expanding a single state, by generator
+// (the JMH @State annotation is qualified as solver.State shadows it)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+    @Param({"8", "12", "16"})
+    int n;
+
+    @Param({"1", "4", "8"})
+    int depth;
+
+    StochasticBestFirstSearch search;
+    State x;
+    Rect parent;
+    List<Rect> children;
+
+    @Setup
+    public void setup() {
+        search = BenchStates.search(n, "uniform");
+        x = BenchStates.randomState(search, depth, new Random(depth));
+        parent = x.getBlock(x.numBlocks()-1);
+        children = parent.biSectionSplit(parent.w >= parent.h, Math.max(parent.w, parent.h)/2);
+    }
+
+    @Benchmark
+    public List<State> bisection() {
+        List<State> beam = new ArrayList<>();
+        search.genNextStatesByBisection(x, beam);
+        return beam;
+    }
+
+    @Benchmark
+    public List<State> spiralEnclosure() {
+        return search.genNextStatesBySpiralEnclosure(x);
+    }
+
+    @Benchmark
+    public void mergeAll(Blackhole bh) {
+        for (int i = 0; i < x.numBlocks(); i++)
+            bh.consume(State.mergeAll(x, i));
+    }
+
+    @Benchmark
+    public List<State> mergeAdjacent() {
+        return x.mergeAdjacent();
+    }
+
+    @Benchmark
+    public State childConstructor() {
+        return new State(x, parent, children);
+    }
+
+    @Benchmark
+    public List<State> expand() {
+        return search.expand(x);
+    }
+}
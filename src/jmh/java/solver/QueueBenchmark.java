@@ -0,0 +1,87 @@
+package solver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the state queue operations as the queue grows
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    @Param({"10", "16"})
+    int n;
+
+    @Param({"1000", "100000"})
+    int queueSize;
+
+    @Param({"uniform", "weighted", "biased"})
+    String sampling;
+
+    static final int NUM_PROBES = 1024;
+
+    StochasticBestFirstSearch search;
+    State[] probes;  // states not in the queue
+    int[] beamScores;
+    int next;
+
+    @Setup
+    public void setup() {
+        search = BenchStates.search(n, sampling);
+        Random rnd = new Random(queueSize);
+
+        int depth = 2;
+        for (int tries = 0; search.stateQueue.size() < queueSize; tries++) {
+            if (tries > 8*queueSize) { // the distinct area multisets at this depth are used up
+                depth++;
+                tries = 0;
+            }
+            State x = BenchStates.randomState(search, depth, rnd);
+            if (!x.isInfeasible())
+                search.addState(x, search.random);
+        }
+
+        probes = new State[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++)
+            probes[i] = BenchStates.randomState(search, depth + 1 + rnd.nextInt(3), rnd);
+
+        beamScores = new int[search.beamSize];
+        for (int i = 0; i < beamScores.length; i++)
+            beamScores[i] = rnd.nextInt(n*n);
+    }
+
+    // Insert a state and take it off again so that the queue keeps its size
+    @Benchmark
+    public State addState() {
+        State x = probes[next++ & (NUM_PROBES-1)];
+        search.addState(x, search.random);
+        State removed = search.stateQueue.remove(x);
+        if (removed == x)
+            search.sampler.remove(x);
+        return removed;
+    }
+
+    @Benchmark
+    public State lookup() {
+        return search.stateQueue.get(probes[next++ & (NUM_PROBES-1)]);
+    }
+
+    @Benchmark
+    public long areaSignature() {
+        return probes[next++ & (NUM_PROBES-1)].areaSignature();
+    }
+
+    @Benchmark
+    public State sample() {
+        return search.sample(search.random);
+    }
+
+    @Benchmark
+    public int samplerSample() {
+        return Sampler.sample(beamScores, search.random);
+    }
+}
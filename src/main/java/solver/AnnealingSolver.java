@@ -0,0 +1,315 @@
+package solver;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+// A simulated-annealing engine. Each chain keeps a single tiling as an array of packed rects
+// which moves change in place: a bisection of a block (as in Rect.biSectionSplit), a spiral
+// split of a block around a pivot (as in RectQuadruple) and a merge of two adjacent blocks (as
+// in State.mergeAlongRight, along any of the four sides), which also reverses a bisection. The
+// counts of areas and shapes are kept up to date per move, so a split and its evaluation cost
+// O(1) plus, when the smallest or largest area goes, a walk of the area counts to the next one.
+// A merge also scans the k blocks for a neighbour, so it costs O(k). No State is created except
+// for a new best tiling.
+//
+// The energy of a tiling is its defect + sa.penalty * (#blocks congruent to another one), and a
+// worse move is accepted with probability exp(-increase/T). T falls from sa.t0 to sa.t_end over
+// sa.steps moves by sa.schedule: geometric (default), linear or lundy (T/(1 + beta*T)).
+// sa.chains independent chains (one per thread by default) run in parallel.
+class AnnealingSolver {
+    static final List<String> SCHEDULES = Arrays.asList("geometric", "linear", "lundy");
+    static final int GEOMETRIC = 0, LINEAR = 1, LUNDY = 2;
+
+    final Problem problem;
+    final int n;
+    final int numChains;
+    final int numThreads;
+    final long steps;
+    final double t0, tEnd;
+    final int schedule;             // GEOMETRIC, LINEAR or LUNDY
+    final int penalty;
+    final double pSpiral, pMerge;   // the rest of the moves are bisections
+    final long timeBudgetNanos;     // 0 for no limit
+    final int targetScore;          // stop once a chain reaches it (or the lower bound)
+    final long seed;
+
+    volatile boolean done;          // some chain has reached the target
+    long numMoves, numAccepted;
+    long startTime;
+    long bestTime;                  // nanos since startTime at which the best tiling was found
+
+    AnnealingSolver(int n, Properties prop) {
+        this.n = n;
+        problem = new Problem(n, Boolean.parseBoolean(prop.getProperty("check.score", "false")),
+                Boolean.parseBoolean(prop.getProperty("check.tiling", "false")));
+        numThreads = Integer.parseInt(prop.getProperty("threads", "1"));
+        numChains = Integer.parseInt(prop.getProperty("sa.chains", String.valueOf(numThreads)));
+        steps = Long.parseLong(prop.getProperty("sa.steps", "5000000"));
+        t0 = Double.parseDouble(prop.getProperty("sa.t0", String.valueOf(n)));
+        tEnd = Double.parseDouble(prop.getProperty("sa.t_end", "0.05"));
+        schedule = SCHEDULES.indexOf(prop.getProperty("sa.schedule", "geometric"));
+        penalty = Integer.parseInt(prop.getProperty("sa.penalty", String.valueOf(n)));
+        pSpiral = Double.parseDouble(prop.getProperty("sa.p_spiral", "0.1"));
+        pMerge = Double.parseDouble(prop.getProperty("sa.p_merge", "0.45"));
+        timeBudgetNanos = Long.parseLong(prop.getProperty("time_budget_ms", "0")) * 1_000_000;
+        String target = prop.getProperty("target_score", "-1");
+        targetScore = Math.max(problem.lowerBound(), target.equals("optimal")? KnownOptima.defect(n): Integer.parseInt(target));
+        seed = prop.containsKey("seed")? Long.parseLong(prop.getProperty("seed")): new SplittableRandom().nextLong();
+
+        if (schedule < 0)
+            throw new IllegalArgumentException("Unknown cooling schedule: " + prop.getProperty("sa.schedule"));
+        System.err.println("Parameters: " + prop);
+        System.err.println("Seed: " + seed);
+    }
+
+    State solve() {
+        startTime = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Chain> chains = new ArrayList<>(numChains);
+        for (int i = 0; i < numChains; i++)
+            chains.add(new Chain(random.split()));
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            pool.submit(() -> chains.parallelStream().forEach(Chain::run)).get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        State best = null;
+        for (Chain c: chains) {
+            numMoves += c.numMoves;
+            numAccepted += c.numAccepted;
+            if (c.best != null && (best == null || c.best.getScore() < best.getScore())) {
+                best = c.best;
+                bestTime = c.bestTime;
+            }
+        }
+        if (best != null)
+            Bitboard.check(best);
+        double secs = (System.nanoTime() - startTime)/1e9;
+        System.err.println(String.format("%d chains: %d moves (%.1f%% accepted) in %.3f s (%.2fM moves/s), best score %s",
+                numChains, numMoves, 100.0*numAccepted/Math.max(1, numMoves), secs, numMoves/secs/1e6,
+                best != null? best.getScore(): "-"));
+        return best;
+    }
+
+    class Chain {
+        final SplittableRandom rnd;
+        final int[] rects = new int[n*n];   // the blocks (in no order)
+        int size;
+        final int[] areaCount = new int[n*n + 1];
+        final int[] shapeCount = new int[problem.numShapes];
+        int minArea = Integer.MAX_VALUE, maxArea;
+        int conflicts;      // #blocks congruent to some other block (all but one per shape)
+
+        // the last move, to undo it: the blocks it removed and the #blocks it added (at the end)
+        final int[] removed = new int[2];
+        int numRemoved, numAdded;
+
+        State best;
+        long bestTime;
+        long numMoves, numAccepted;
+
+        Chain(SplittableRandom rnd) {
+            this.rnd = rnd;
+            int cut = 1 + rnd.nextInt(n-1);  // start from a random bisection of the square
+            add(new Rect(0, 0, cut, n).pack());
+            add(new Rect(0, cut, n-cut, n).pack());
+        }
+
+        int defect() { return maxArea - minArea; }
+
+        int energy() { return defect() + penalty*conflicts; }
+
+        void add(int p) {
+            rects[size++] = p;
+            int a = Rect.area(p);
+            if (areaCount[a]++ == 0) {
+                minArea = Math.min(minArea, a);
+                maxArea = Math.max(maxArea, a);
+            }
+            if (shapeCount[problem.shapeId(p)]++ > 0)
+                conflicts++;
+        }
+
+        void remove(int i) {
+            int p = rects[i];
+            rects[i] = rects[--size];
+            int a = Rect.area(p);
+            if (--areaCount[a] == 0) {
+                if (size == 0) {
+                    minArea = Integer.MAX_VALUE;
+                    maxArea = 0;
+                }
+                else {
+                    while (areaCount[minArea] == 0)
+                        minArea++;
+                    while (areaCount[maxArea] == 0)
+                        maxArea--;
+                }
+            }
+            if (--shapeCount[problem.shapeId(p)] > 0)
+                conflicts--;
+        }
+
+        void take(int i) {
+            removed[numRemoved++] = rects[i];
+            remove(i);
+        }
+
+        void put(int x, int y, int w, int h) {
+            add(x<<24 | y<<16 | w<<8 | h);
+            numAdded++;
+        }
+
+        void undo() {
+            for (int k = 0; k < numAdded; k++)
+                remove(size-1);
+            for (int k = 0; k < numRemoved; k++)
+                add(removed[k]);
+        }
+
+        // Split block i in two along a random line
+        boolean split(int i) {
+            int p = rects[i];
+            int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            if (w == 1 && h == 1)
+                return false;
+            take(i);
+            if (h == 1 || w > 1 && rnd.nextBoolean()) {
+                int cut = 1 + rnd.nextInt(w-1);
+                put(x, y, cut, h);
+                put(x, y+cut, w-cut, h);
+            }
+            else {
+                int cut = 1 + rnd.nextInt(h-1);
+                put(x, y, w, cut);
+                put(x+cut, y, w, h-cut);
+            }
+            return true;
+        }
+
+        // Split block i into a random pivot and the four blocks winding around it
+        boolean spiral(int i) {
+            int p = rects[i];
+            int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            if (w < 3 || h < 3)
+                return false;
+            int dx = 1 + rnd.nextInt(h-2), ih = 1 + rnd.nextInt(h-1-dx);
+            int dy = 1 + rnd.nextInt(w-2), iw = 1 + rnd.nextInt(w-1-dy);
+            take(i);
+            put(x, y, dy+iw, dx);                                 // top
+            put(x+dx, y, dy, h-dx);                               // left
+            put(x+dx+ih, y+dy, w-dy, h-dx-ih);                    // bottom
+            put(x, y+dy+iw, w-dy-iw, dx+ih);                      // right
+            put(x+dx, y+dy, iw, ih);                              // pivot
+            return true;
+        }
+
+        // Merge block i with a random block sharing a side with it: the part of the two along the
+        // common edge becomes one block and what's left of either stays as is
+        boolean merge(int i) {
+            int p = rects[i];
+            int j = -1, seen = 0;
+            for (int k = 0; k < size; k++) {
+                if (k != i && LNSOptimizer.adjacent(p, rects[k]) && rnd.nextInt(++seen) == 0)
+                    j = k;
+            }
+            if (j < 0)
+                return false;
+
+            int q = rects[j];
+            int x1 = p >>> 24, y1 = (p >>> 16) & 0xff, w1 = (p >>> 8) & 0xff, h1 = p & 0xff;
+            int x2 = q >>> 24, y2 = (q >>> 16) & 0xff, w2 = (q >>> 8) & 0xff, h2 = q & 0xff;
+            boolean sideBySide = y1 + w1 == y2 || y2 + w2 == y1;
+            if (size == 2 && (sideBySide? h1 == h2: w1 == w2))
+                return false;   // would leave the whole square
+
+            take(Math.max(i, j));
+            take(Math.min(i, j));
+            if (sideBySide) {
+                if (y2 < y1) { // p on the left
+                    int t;
+                    t = x1; x1 = x2; x2 = t;  t = y1; y1 = y2; y2 = t;
+                    t = w1; w1 = w2; w2 = t;  t = h1; h1 = h2; h2 = t;
+                }
+                int s = Math.max(x1, x2), e = Math.min(x1+h1, x2+h2);
+                put(s, y1, w1+w2, e-s);
+                if (x1 < s) put(x1, y1, w1, s-x1);
+                if (x2 < s) put(x2, y2, w2, s-x2);
+                if (x1+h1 > e) put(e, y1, w1, x1+h1-e);
+                if (x2+h2 > e) put(e, y2, w2, x2+h2-e);
+            }
+            else {
+                if (x2 < x1) { // p on top
+                    int t;
+                    t = x1; x1 = x2; x2 = t;  t = y1; y1 = y2; y2 = t;
+                    t = w1; w1 = w2; w2 = t;  t = h1; h1 = h2; h2 = t;
+                }
+                int s = Math.max(y1, y2), e = Math.min(y1+w1, y2+w2);
+                put(x1, s, e-s, h1+h2);
+                if (y1 < s) put(x1, y1, s-y1, h1);
+                if (y2 < s) put(x2, y2, s-y2, h2);
+                if (y1+w1 > e) put(x1, e, y1+w1-e, h1);
+                if (y2+w2 > e) put(x2, e, y2+w2-e, h2);
+            }
+            return true;
+        }
+
+        boolean move() {
+            numRemoved = numAdded = 0;
+            int i = rnd.nextInt(size);
+            double u = rnd.nextDouble();
+            return u < pSpiral? spiral(i): u < pSpiral + pMerge? merge(i): split(i);
+        }
+
+        void run() {
+            double t = t0;
+            double alpha = Math.pow(tEnd/t0, 1.0/steps);            // geometric
+            double beta = (t0 - tEnd)/(steps * t0 * tEnd);          // lundy
+            int energy = energy();
+
+            for (long step = 0; step < steps; step++) {
+                if ((step & 0xfff) == 0 && (done ||
+                        timeBudgetNanos > 0 && System.nanoTime() - startTime >= timeBudgetNanos))
+                    break;
+
+                if (!move())
+                    continue;
+                numMoves++;
+                int delta = energy() - energy;
+                if (delta <= 0 || rnd.nextDouble() < Math.exp(-delta/t)) {
+                    energy += delta;
+                    numAccepted++;
+                    if (conflicts == 0 && (best == null || defect() < best.getScore()))
+                        improved();
+                }
+                else
+                    undo();
+
+                if (schedule == GEOMETRIC)
+                    t *= alpha;
+                else if (schedule == LINEAR)
+                    t = t0 - (t0 - tEnd)*(step+1)/steps;
+                else
+                    t = t/(1 + beta*t);
+            }
+        }
+
+        void improved() {
+            best = new State(problem, 0, Arrays.copyOf(rects, size));
+            bestTime = System.nanoTime() - startTime;
+            if (best.getScore() <= targetScore)
+                done = true;
+        }
+    }
+}
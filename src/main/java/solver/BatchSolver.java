@@ -0,0 +1,174 @@
+package solver;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Solves a range of n for each of a number of parameter sets in one JVM, running the solves
+// concurrently on a shared pool, and writes a summary of each run to a CSV (or JSON) file.
+// Listeners default to none here since the logs of concurrent solves would interleave.
+// The size of the pool is given by batch.threads in the first properties file (the #processors by
+// default). With batch.svg=true the best state of each run (and a gallery of its top states, if
+// gallery is set) is written to solutions/mondrian-<n>-<n>-<params>.htm. A checkpoint.file is
+// suffixed with .<n>-<params> for each run.
+class BatchSolver {
+
+    static class Run {
+        final int n;
+        final String params;    // name of the properties file
+        final Properties prop;
+        State best;
+        List<State> gallery;    // the top distinct states (if asked for)
+        int numVisited;
+        long millis;
+        long millisToBest;      // since the start of the search
+
+        Run(int n, String params, Properties prop) {
+            this.n = n;
+            this.params = params;
+            this.prop = prop;
+        }
+
+        Run solve() {
+            long start = System.nanoTime();
+            if (prop.getProperty("engine", "beam").equals("anneal")) {
+                AnnealingSolver solver = new AnnealingSolver(n, prop);
+                best = solver.solve();
+                numVisited = (int)Math.min(Integer.MAX_VALUE, solver.numMoves);
+                millisToBest = solver.bestTime / 1_000_000;
+            }
+            else if (prop.getProperty("engine", "beam").equals("exact")) {
+                ExactSolver solver = new ExactSolver(n, prop);
+                best = solver.solve();
+                numVisited = (int)Math.min(Integer.MAX_VALUE, solver.numNodes.sum()); // placements tried
+                millisToBest = solver.solutionTime / 1_000_000;
+            }
+            else {
+                StochasticBestFirstSearch se = new StochasticBestFirstSearch(n, prop);
+                best = se.epoch();
+                int k = Integer.parseInt(prop.getProperty("gallery", "0"));
+                if (k > 0)
+                    gallery = se.topStates(k);
+                numVisited = se.numVisited;
+                millisToBest = se.bestTime / 1_000_000;
+            }
+            millis = (System.nanoTime() - start) / 1_000_000;
+            return this;
+        }
+
+        void writeSVG() throws IOException {
+            if (best == null)
+                return;
+            boolean color = Boolean.parseBoolean(prop.getProperty("color", "false"));
+            SplittableRandom rnd = prop.containsKey("seed")?
+                    new SplittableRandom(Long.parseLong(prop.getProperty("seed"))): new SplittableRandom();
+            String name = "-" + params.replaceFirst("\\.properties$", "");
+            SVGWriter.write(best, SVGWriter.solutionFile(n, name), color, rnd);
+            if (gallery != null)
+                SVGWriter.writeGallery(gallery, SVGWriter.solutionFile(n, name + "-gallery"), color, rnd);
+        }
+
+        int score() { return best != null? best.getScore(): -1; }
+
+        int numRects() { return best != null? best.numBlocks(): 0; }
+    }
+
+    // n's given as "12", "10-20" or "8,12,16"
+    static List<Integer> parseRange(String spec) {
+        List<Integer> ns = new ArrayList<>();
+        for (String part: spec.split(",")) {
+            int dash = part.indexOf('-');
+            if (dash < 0)
+                ns.add(Integer.parseInt(part.trim()));
+            else {
+                int from = Integer.parseInt(part.substring(0, dash).trim());
+                int to = Integer.parseInt(part.substring(dash+1).trim());
+                for (int n = from; n <= to; n++)
+                    ns.add(n);
+            }
+        }
+        return ns;
+    }
+
+    static void writeCSV(List<Run> runs, String outFile) throws IOException {
+        try (PrintWriter out = new PrintWriter(outFile)) {
+            out.println("n,params,score,rects,visited,millis,millis_to_best");
+            for (Run r: runs)
+                out.println(String.format("%d,%s,%d,%d,%d,%d,%d",
+                        r.n, r.params, r.score(), r.numRects(), r.numVisited, r.millis, r.millisToBest));
+        }
+    }
+
+    static void writeJSON(List<Run> runs, String outFile) throws IOException {
+        try (PrintWriter out = new PrintWriter(outFile)) {
+            out.println("[");
+            for (int i = 0; i < runs.size(); i++) {
+                Run r = runs.get(i);
+                out.print(String.format(
+                        "  {\"n\": %d, \"params\": \"%s\", \"score\": %d, \"rects\": %d, \"visited\": %d, \"millis\": %d, \"millis_to_best\": %d}",
+                        r.n, r.params.replace("\\", "\\\\").replace("\"", "\\\""),
+                        r.score(), r.numRects(), r.numVisited, r.millis, r.millisToBest));
+                out.println(i < runs.size()-1? ",": "");
+            }
+            out.println("]");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage BatchSolver <n|from-to|n1,n2,...> <results.csv|results.json> <init.properties> [<more.properties> ...]");
+            return;
+        }
+
+        List<Run> runs = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int k = 2; k < args.length; k++) {
+            Properties base = new Properties();
+            try (FileReader reader = new FileReader(args[k])) {
+                base.load(reader);
+            }
+            if (!base.containsKey("listeners"))
+                base.setProperty("listeners", "");
+
+            if (k == 2)     // the pool is shared by all the runs, so it's sized by the first file
+                threads = Integer.parseInt(base.getProperty("batch.threads", String.valueOf(threads)));
+
+            String params = Paths.get(args[k]).getFileName().toString();
+            for (int n: parseRange(args[0])) {
+                Properties prop = new Properties();
+                prop.putAll(base);
+                String checkpoint = base.getProperty("checkpoint.file", "");
+                if (!checkpoint.isEmpty())  // one file per run, or they'd overwrite each other's
+                    prop.setProperty("checkpoint.file",
+                            checkpoint + "." + n + "-" + params.replaceFirst("\\.properties$", ""));
+                runs.add(new Run(n, params, prop));
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(runs.size(), threads)));
+        try {
+            List<Future<Run>> done = new ArrayList<>(runs.size());
+            for (Run r: runs)
+                done.add(pool.submit(r::solve));
+            for (Future<Run> f: done) {
+                Run r = f.get();
+                System.err.println(String.format("n=%d (%s): score = %d, #rects = %d, visited = %d, %d ms",
+                        r.n, r.params, r.score(), r.numRects(), r.numVisited, r.millis));
+                if (Boolean.parseBoolean(r.prop.getProperty("batch.svg", "false")))
+                    r.writeSVG();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        if (args[1].endsWith(".json"))
+            writeJSON(runs, args[1]);
+        else
+            writeCSV(runs, args[1]);
+    }
+}
@@ -0,0 +1,200 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+// A set of cells of the n x n square as one 64-bit word per row (bit c of row r is the cell at
+// column c), so n is limited to 64 as in ExactSolver. Placing a rect, and checking it for
+// overlaps, is a mask per row, and the transforms of the square (transpose, reflection and
+// rotation, in the sense of Rect.getRotated, Rect.getReflectedHorizontally and State.rotate)
+// as well as the adjacency of two sets of cells are word-parallel.
+//
+// validate() checks that a state is a tiling of the square: every block lies inside it, no two
+// blocks overlap and together they cover it. It's run on the final best state of every engine
+// and, with check.tiling=true, on every state constructed (an assertion mode).
+class Bitboard {
+    static final int MAX_N = 64;
+
+    final int n;
+    final long[] rows;
+    final long full;    // the bits of a filled row
+
+    Bitboard(int n) {
+        if (n > MAX_N)
+            throw new IllegalArgumentException("Bitboards are limited to n <= " + MAX_N);
+        this.n = n;
+        rows = new long[n];
+        full = n == 64? -1L: (1L << n) - 1;
+    }
+
+    // The cells of a packed rect
+    static Bitboard of(int n, int p) {
+        Bitboard b = new Bitboard(n);
+        b.place(p);
+        return b;
+    }
+
+    static long mask(int c, int w) {
+        return (w == 64? -1L: (1L << w) - 1) << c;
+    }
+
+    // Add the cells of a packed rect (which has to lie inside the square), returning false if
+    // any of them was already there
+    boolean place(int p) {
+        int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+        long mask = mask(y, w);
+        boolean disjoint = true;
+        for (int r = x; r < x + h; r++) {
+            disjoint &= (rows[r] & mask) == 0;
+            rows[r] |= mask;
+        }
+        return disjoint;
+    }
+
+    boolean isFull() {
+        for (long row: rows) {
+            if (row != full)
+                return false;
+        }
+        return true;
+    }
+
+    int cardinality() {
+        int c = 0;
+        for (long row: rows)
+            c += Long.bitCount(row);
+        return c;
+    }
+
+    // Swap rows and columns: (r, c) -> (c, r), by swapping ever smaller blocks of the 64x64
+    // matrix across the diagonal (Hacker's Delight, 7-3)
+    Bitboard transpose() {
+        long[] a = Arrays.copyOf(rows, 64);
+        long m = 0x00000000FFFFFFFFL;
+        for (int j = 32; j != 0; j >>= 1, m ^= m << j) {
+            for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+                long t = ((a[k] >>> j) ^ a[k | j]) & m;
+                a[k] ^= t << j;
+                a[k | j] ^= t;
+            }
+        }
+        Bitboard b = new Bitboard(n);
+        System.arraycopy(a, 0, b.rows, 0, n);
+        return b;
+    }
+
+    // Mirror the columns: (r, c) -> (r, n-1-c)
+    Bitboard reflectHorizontally() {
+        Bitboard b = new Bitboard(n);
+        for (int r = 0; r < n; r++)
+            b.rows[r] = Long.reverse(rows[r]) >>> (64 - n);
+        return b;
+    }
+
+    // As State.rotate
+    Bitboard rotate(boolean antiClockwise) {
+        return antiClockwise? reflectHorizontally().transpose(): transpose().reflectHorizontally();
+    }
+
+    // The cells next to (but not in) this set, along a side
+    Bitboard border() {
+        Bitboard b = new Bitboard(n);
+        for (int r = 0; r < n; r++) {
+            long around = rows[r] << 1 | rows[r] >>> 1;
+            if (r > 0)
+                around |= rows[r-1];
+            if (r < n-1)
+                around |= rows[r+1];
+            b.rows[r] = around & full & ~rows[r];
+        }
+        return b;
+    }
+
+    // Whether a packed rect has a cell in this set
+    boolean intersects(int p) {
+        int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+        long mask = mask(y, w);
+        for (int r = x; r < x + h; r++) {
+            if ((rows[r] & mask) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Bitboard && Arrays.equals(rows, ((Bitboard)o).rows);
+    }
+
+    @Override
+    public int hashCode() { return Arrays.hashCode(rows); }
+
+    // Why x isn't a tiling of the square, or null if it is
+    static String validate(State x) {
+        int n = x.problem.n;
+        for (int p: x.blocks) {
+            int r = p >>> 24, c = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            if (w == 0 || h == 0 || r + h > n || c + w > n)
+                return "block " + Rect.unpack(p) + " is empty or out of the square";
+        }
+        if (n > MAX_N)
+            return validateCells(x);
+
+        Bitboard b = new Bitboard(n);
+        for (int p: x.blocks) {
+            if (!b.place(p))
+                return "block " + Rect.unpack(p) + " overlaps another one";
+        }
+        if (!b.isFull())
+            return String.format("the blocks cover %d of the %d cells", b.cardinality(), n*n);
+        return null;
+    }
+
+    // validate() a cell at a time for the squares that don't fit bitboards
+    static String validateCells(State x) {
+        int n = x.problem.n;
+        boolean[] covered = new boolean[n*n];
+        int numCovered = 0;
+        for (int p: x.blocks) {
+            int r0 = p >>> 24, c0 = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            for (int r = r0; r < r0 + h; r++) {
+                for (int c = c0; c < c0 + w; c++) {
+                    if (covered[r*n + c])
+                        return "block " + Rect.unpack(p) + " overlaps another one";
+                    covered[r*n + c] = true;
+                    numCovered++;
+                }
+            }
+        }
+        if (numCovered != n*n)
+            return String.format("the blocks cover %d of the %d cells", numCovered, n*n);
+        return null;
+    }
+
+    // Throw if x isn't a tiling of the square
+    static void check(State x) {
+        String error = validate(x);
+        if (error != null)
+            throw new IllegalStateException("Not a tiling: " + error + " in state " + x);
+    }
+
+    // Throw if the blocks of t aren't those of x transformed as the bitboards are
+    static void checkRotation(State x, State t, boolean antiClockwise) {
+        checkTransform(x, t, b -> b.rotate(antiClockwise));
+    }
+
+    static void checkReflection(State x, State t) {
+        checkTransform(x, t, Bitboard::reflectHorizontally);
+    }
+
+    static void checkTransform(State x, State t, UnaryOperator<Bitboard> transform) {
+        int n = x.problem.n;
+        if (n > MAX_N)
+            return;
+        for (int i = 0; i < x.blocks.length; i++) {
+            if (!transform.apply(of(n, x.blocks[i])).equals(of(n, t.blocks[i])))
+                throw new IllegalStateException(String.format("Block %s transformed to %s in state %s",
+                        Rect.unpack(x.blocks[i]), Rect.unpack(t.blocks[i]), x));
+        }
+    }
+}
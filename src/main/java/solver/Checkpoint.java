@@ -0,0 +1,196 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Periodic snapshots of a search (its queue, best state and counters) in a compact binary
+// format in which each state is its depth, #blocks and packed rects. Taking a snapshot only
+// copies the references to the (immutable) queued states; encoding and writing are done on
+// a background thread into a temporary file which then replaces the previous checkpoint.
+//
+// Layout (big-endian ints): MAGIC VERSION n numVisited bestScore <best state or depth -1>
+//                           #states <state>*      where <state> = depth k packed[0..k)
+public class Checkpoint {
+    static final int MAGIC = 0x4D434B50; // "MCKP"
+    static final int VERSION = 1;
+    static final int BUFFER_SIZE = 1 << 16;
+
+    final Path file;
+    final long intervalNanos;
+    long lastSaved;
+    ExecutorService writer;     // a single daemon thread
+    Future<?> pending;          // the write in progress (if any)
+
+    Checkpoint(Path file, long intervalMillis) {
+        this.file = file;
+        this.intervalNanos = intervalMillis * 1_000_000;
+        this.lastSaved = System.nanoTime();
+        writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // What gets written, captured while the search is at a consistent point
+    static class Snapshot {
+        final int n;
+        final int numVisited;
+        final int bestScore;
+        final State best;
+        final State[] states;
+
+        Snapshot(StochasticBestFirstSearch se, Collection<State> inFlight) {
+            n = se.problem.n;
+            numVisited = se.numVisited;
+            bestScore = se.bestScore;
+            best = se.bestState;
+
+            // the states being expanded by workers are written as queued states
+            states = new State[se.stateQueue.size() + inFlight.size()];
+            int i = 0;
+            for (State x: se.stateQueue.values())
+                states[i++] = x;
+            for (State x: inFlight)
+                states[i++] = x;
+        }
+    }
+
+    // Start writing a checkpoint if the interval has passed since the last one, unless the last
+    // one is still being written. Called by the search at a consistent point (under its lock).
+    void maybeSave(StochasticBestFirstSearch se, Collection<State> inFlight) {
+        long now = System.nanoTime();
+        if (now - lastSaved < intervalNanos || pending != null && !pending.isDone())
+            return;
+
+        lastSaved = now;
+        Snapshot snapshot = new Snapshot(se, inFlight);
+        pending = writer.submit(() -> {
+            try {
+                write(snapshot);
+            }
+            catch (IOException ex) {
+                System.err.println("Failed to write checkpoint " + file + ": " + ex);
+            }
+        });
+    }
+
+    // Write a final checkpoint (once a pending write is over) and stop the writer
+    void close(StochasticBestFirstSearch se, Collection<State> inFlight) throws IOException {
+        try {
+            if (pending != null)
+                pending.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            System.err.println("Failed to write checkpoint " + file + ": " + ex.getCause());
+        }
+        finally {
+            writer.shutdown();
+        }
+        write(new Snapshot(se, inFlight));
+    }
+
+    void write(Snapshot snapshot) throws IOException {
+        long start = System.nanoTime();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long bytes;
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(snapshot.n)
+                    .putInt(snapshot.numVisited).putInt(snapshot.bestScore);
+            if (snapshot.best != null)
+                writeState(ch, buf, snapshot.best);
+            else
+                buf.putInt(-1);
+
+            ensure(ch, buf, 4);
+            buf.putInt(snapshot.states.length);
+            for (State x: snapshot.states)
+                writeState(ch, buf, x);
+
+            flush(ch, buf);
+            bytes = ch.position();
+            ch.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        System.err.println(String.format("Checkpoint of %d states (%d bytes) written to %s in %d ms",
+                snapshot.states.length, bytes, file, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    static void writeState(FileChannel ch, ByteBuffer buf, State x) throws IOException {
+        int k = x.blocks.length;
+        ensure(ch, buf, 8);
+        buf.putInt(x.depth).putInt(k);
+        for (int b: x.blocks) {
+            ensure(ch, buf, 4);
+            buf.putInt(b);
+        }
+    }
+
+    static void ensure(FileChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() < bytes)
+            flush(ch, buf);
+    }
+
+    static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+
+    // Load a checkpoint into a freshly constructed search (for the same n)
+    static void restore(StochasticBestFirstSearch se, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                throw new IOException("Not a checkpoint file (or of an unsupported version): " + file);
+            int n = buf.getInt();
+            if (n != se.problem.n)
+                throw new IOException(String.format("Checkpoint %s is for n=%d, not n=%d", file, n, se.problem.n));
+
+            se.numVisited = buf.getInt();
+            se.bestScore = buf.getInt();
+            se.bestState = readState(se.problem, buf);
+
+            int numStates = buf.getInt();
+            List<State> states = new ArrayList<>(numStates);
+            for (int i = 0; i < numStates; i++)
+                states.add(readState(se.problem, buf));
+            se.resume(states);
+
+            System.err.println(String.format("Resumed from %s: %d states in queue, %d visited, best score %d",
+                    file, numStates, se.numVisited, se.bestScore));
+        }
+    }
+
+    static State readState(Problem problem, ByteBuffer buf) {
+        int depth = buf.getInt();
+        if (depth < 0)
+            return null;
+        int[] packed = new int[buf.getInt()];
+        buf.asIntBuffer().get(packed);
+        buf.position(buf.position() + 4*packed.length);
+        return new State(problem, depth, packed);
+    }
+}
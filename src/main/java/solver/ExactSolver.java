@@ -0,0 +1,217 @@
+package solver;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// An exact engine: for d = lower bound, lower bound + 1, ... enumerate the sets of distinct shapes
+// whose areas add up to n*n and span exactly d (max area - min area), and try to pack each set into
+// the square, in parallel across the sets. The first d for which some set packs is the optimal
+// score, since all the sets spanning less have been shown not to pack.
+//
+// The packing is a depth-first fill of the first empty cell (in row-major order) with a bitboard
+// row per square row, so n is limited to 64.
+public class ExactSolver {
+    final Problem problem;
+    final int n;
+    final int minDefect;
+    final int maxDefect;
+    final int numThreads;
+    final long full;    // the bits of a filled row
+
+    final AtomicReference<State> solution = new AtomicReference<>();
+    final LongAdder numNodes = new LongAdder();   // placements tried
+    long numSets;       // shape sets tried
+    int optimum = -1;   // the proven optimal score (if found)
+    long startTime;     // System.nanoTime() at the start of solve()
+    volatile long solutionTime; // nanos since startTime at which the solution was found
+
+    ExactSolver(int n, Properties prop) {
+        if (n > 64)
+            throw new IllegalArgumentException("The exact engine supports n <= 64");
+        this.n = n;
+        problem = new Problem(n, Boolean.parseBoolean(prop.getProperty("check.score", "false")),
+                Boolean.parseBoolean(prop.getProperty("check.tiling", "false")));
+        minDefect = Integer.parseInt(prop.getProperty("exact.min_defect", String.valueOf(problem.lowerBound())));
+        maxDefect = Integer.parseInt(prop.getProperty("exact.max_defect", String.valueOf(problem.maxScore)));
+        numThreads = Integer.parseInt(prop.getProperty("threads", "1"));
+        full = n == 64? -1L: (1L << n) - 1;
+
+        System.err.println("Parameters: " + prop);
+    }
+
+    State solve() {
+        startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            for (int d = minDefect; d <= maxDefect; d++) {
+                long start = System.nanoTime();
+                List<int[]> sets = shapeSets(d);
+                numSets += sets.size();
+
+                pool.submit(() -> sets.parallelStream().forEach(this::pack)).get();
+
+                System.err.println(String.format("score %d: %d shape sets tried in %.3f s, %d placements so far",
+                        d, sets.size(), (System.nanoTime() - start)/1e9, numNodes.sum()));
+                if (solution.get() != null) {
+                    Bitboard.check(solution.get());
+                    if (minDefect <= problem.lowerBound()) { // nothing below minDefect was skipped
+                        optimum = d;
+                        System.err.println(String.format("Found a tiling with score %d, which is optimal", d));
+                    }
+                    else
+                        System.err.println(String.format("Found a tiling with score %d (scores below %d weren't tried)",
+                                d, minDefect));
+                    return solution.get();
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        return null;
+    }
+
+    // The sets of distinct shapes (packed as w<<8|h with w <= h) with areas adding up to n*n
+    // and spanning exactly d, each with its shapes in decreasing order of area
+    List<int[]> shapeSets(int d) {
+        List<int[]> shapes = new ArrayList<>();
+        for (int w = 1; w <= n; w++) {
+            for (int h = w; h <= n; h++) {
+                if (h < n || w < n) // a tiling has at least two blocks
+                    shapes.add(new int[] { w, h });
+            }
+        }
+        shapes.sort((a, b) -> Integer.compare(b[0]*b[1], a[0]*a[1]));
+
+        List<int[]> sets = new ArrayList<>();
+        int maxScore = problem.maxScore;
+        for (int lo = 1; lo + d < maxScore; lo++) {
+            List<int[]> window = new ArrayList<>();
+            boolean hasMin = false, hasMax = false;
+            for (int[] s: shapes) {
+                int area = s[0]*s[1];
+                if (area >= lo && area <= lo + d) {
+                    window.add(s);
+                    hasMin |= area == lo;
+                    hasMax |= area == lo + d;
+                }
+            }
+            if (!hasMin || !hasMax)
+                continue;
+
+            int k = window.size();
+            int[] areas = new int[k];
+            int[] suffix = new int[k+1];   // total area of window[i..k)
+            for (int i = k-1; i >= 0; i--) {
+                areas[i] = window.get(i)[0] * window.get(i)[1];
+                suffix[i] = suffix[i+1] + areas[i];
+            }
+            if (suffix[0] < maxScore)
+                continue;
+
+            collect(window, areas, suffix, 0, 0, new int[k], 0, lo, lo + d, sets);
+        }
+        return sets;
+    }
+
+    // Extend the chosen shapes window[chosen[0..m)] to sets that add up to n*n and include both an
+    // area of lo and one of hi
+    void collect(List<int[]> window, int[] areas, int[] suffix, int i, int sum,
+                 int[] chosen, int m, int lo, int hi, List<int[]> sets) {
+        int maxScore = problem.maxScore;
+        if (sum == maxScore) {
+            if (areas[chosen[0]] == hi && areas[chosen[m-1]] == lo) {
+                int[] set = new int[m];
+                for (int j = 0; j < m; j++)
+                    set[j] = window.get(chosen[j])[0] << 8 | window.get(chosen[j])[1];
+                sets.add(set);
+            }
+            return;
+        }
+        if (i == areas.length || sum + suffix[i] < maxScore)
+            return;
+        if (m == 0 && areas[i] != hi)
+            return; // the largest area has to be in the set
+
+        if (sum + areas[i] <= maxScore) {
+            chosen[m] = i;
+            collect(window, areas, suffix, i+1, sum + areas[i], chosen, m+1, lo, hi, sets);
+        }
+        collect(window, areas, suffix, i+1, sum, chosen, m, lo, hi, sets);
+    }
+
+    // Try to tile the square with the given shapes (each once, in either orientation)
+    void pack(int[] set) {
+        if (solution.get() != null)
+            return;
+
+        long[] rows = new long[n];
+        int[] placed = new int[set.length];
+        long[] nodes = new long[1];
+        if (fill(rows, set, new boolean[set.length], 0, placed, 0, nodes)) {
+            State s = new State(problem, 0, placed);
+            if (solution.compareAndSet(null, s))
+                solutionTime = System.nanoTime() - startTime;
+        }
+        numNodes.add(nodes[0]);
+    }
+
+    boolean fill(long[] rows, int[] set, boolean[] used, int numPlaced, int[] placed, int r, long[] nodes) {
+        if (numPlaced == set.length)
+            return true;
+        if (solution.get() != null)
+            return false;  // found by another worker
+
+        while (rows[r] == full)
+            r++;
+        int c = Long.numberOfTrailingZeros(~rows[r]);
+        int run = Long.numberOfTrailingZeros((rows[r] | ~full) >>> c);   // free cells from c on
+        if (c + run > n)
+            run = n - c;
+
+        for (int i = 0; i < set.length; i++) {
+            if (used[i])
+                continue;
+            int a = set[i] >>> 8, b = set[i] & 0xff;
+            for (int o = 0; o < (a == b? 1: 2); o++) {
+                int w = o == 0? a: b, h = o == 0? b: a;   // w along the row, h down the columns
+                if (w > run || r + h > n)
+                    continue;
+                long mask = (w == 64? -1L: (1L << w) - 1) << c;
+                if (!fits(rows, r, h, mask))
+                    continue;
+
+                nodes[0]++;
+                for (int k = r; k < r + h; k++)
+                    rows[k] |= mask;
+                used[i] = true;
+                placed[numPlaced] = new Rect(r, c, w, h).pack();
+
+                if (fill(rows, set, used, numPlaced+1, placed, r, nodes))
+                    return true;
+
+                used[i] = false;
+                for (int k = r; k < r + h; k++)
+                    rows[k] &= ~mask;
+            }
+        }
+        return false;
+    }
+
+    static boolean fits(long[] rows, int r, int h, long mask) {
+        for (int k = r; k < r + h; k++) {
+            if ((rows[k] & mask) != 0)
+                return false;
+        }
+        return true;
+    }
+}
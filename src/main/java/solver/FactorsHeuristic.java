@@ -25,11 +25,11 @@ public class FactorsHeuristic implements Comparator<State> {
 
     static public float avgNumFactors(State x) {
         int totalNumFactors = 0;
-        for (Rect r: x.blocks) {
+        for (int b: x.blocks) {
             for (int p: primes)
-                totalNumFactors += findExponent(r.area, p);
+                totalNumFactors += findExponent(Rect.area(b), p);
         }
-        return totalNumFactors/(float)x.blocks.size();
+        return totalNumFactors/(float)x.numBlocks();
     }
 
     @Override
@@ -0,0 +1,38 @@
+package solver;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Shares the expansion effort among the move generators by how much they pay off: on each
+// expansion the generator with the most improvements per expansion so far is always run, and
+// every other one with a probability in proportion to its rate relative to the best, but no less
+// than minShare so that a generator that starts paying off (e.g. merges deeper down) is noticed.
+class GeneratorBandit {
+    final List<MoveGenerator> generators;
+    final double minShare;
+
+    GeneratorBandit(List<MoveGenerator> generators, double minShare) {
+        this.generators = generators;
+        this.minShare = minShare;
+    }
+
+    // Which of the generators to run on the next expansion
+    boolean[] choose(SplittableRandom rnd) {
+        int k = generators.size();
+        double[] rates = new double[k];
+        double best = 0;
+        int argBest = 0;
+        for (int g = 0; g < k; g++) {
+            rates[g] = generators.get(g).rate();
+            if (rates[g] > best) {
+                best = rates[g];
+                argBest = g;
+            }
+        }
+
+        boolean[] run = new boolean[k];
+        for (int g = 0; g < k; g++)
+            run[g] = g == argBest || rnd.nextDouble() < Math.max(minShare, rates[g]/best);
+        return run;
+    }
+}
@@ -0,0 +1,28 @@
+package solver;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// The best state across the islands of a portfolio. Islands offer their best states and read
+// the others' without locking; each improvement is reported on stderr with the time and island.
+public class Incumbent {
+    final AtomicReference<State> best = new AtomicReference<>();
+    final long startTime = System.nanoTime();
+
+    State get() { return best.get(); }
+
+    // Make x the incumbent if it's better; true if it was made so
+    boolean offer(State x, int island) {
+        if (x.isInfeasible())
+            return false;
+        State current;
+        do {
+            current = best.get();
+            if (current != null && current.getScore() <= x.getScore())
+                return false;
+        } while (!best.compareAndSet(current, x));
+
+        System.err.println(String.format("[%.3f s] island %d: score = %d, #rectangles = %d",
+                (System.nanoTime() - startTime)/1e9, island, x.getScore(), x.numBlocks()));
+        return true;
+    }
+}
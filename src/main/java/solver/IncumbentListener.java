@@ -0,0 +1,12 @@
+package solver;
+
+// Streams each new best state on stdout as soon as it's found, with the time since the start
+public class IncumbentListener implements SearchListener {
+    final long startTime = System.nanoTime();
+
+    @Override
+    public void onImproved(State best) {
+        System.out.println(String.format("[%.3f s] score = %d, #rectangles = %d: %s",
+                (System.nanoTime() - startTime)/1e9, best.getScore(), best.numBlocks(), best));
+    }
+}
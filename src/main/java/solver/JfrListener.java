@@ -0,0 +1,72 @@
+package solver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.List;
+
+// Emits JFR custom events (requires a JDK with Flight Recorder, i.e. 11+); record with
+// java -XX:StartFlightRecording=filename=search.jfr ... and listeners=jfr
+public class JfrListener implements SearchListener {
+
+    @Name("solver.Expansion")
+    @Label("State Expansion")
+    @Category("Mondrian Solver")
+    static class ExpansionEvent extends Event {
+        @Label("Depth") int depth;
+        @Label("Score") int score;
+        @Label("Candidates") int numCandidates;
+        @Label("Selected") int numSelected;
+    }
+
+    @Name("solver.Improvement")
+    @Label("Incumbent Improved")
+    @Category("Mondrian Solver")
+    static class ImprovementEvent extends Event {
+        @Label("Score") int score;
+        @Label("Depth") int depth;
+        @Label("Rectangles") int numBlocks;
+    }
+
+    @Name("solver.Phase")
+    @Label("Search Phase")
+    @Category("Mondrian Solver")
+    static class PhaseEvent extends Event {
+        @Label("Phase") String phase;
+        @Label("Time") @Timespan(Timespan.NANOSECONDS) long nanos;
+    }
+
+    @Override
+    public void onSelected(State x, int numCandidates, List<State> topK) {
+        ExpansionEvent e = new ExpansionEvent();
+        if (!e.isEnabled())
+            return;
+        e.depth = x.depth;
+        e.score = x.getScore();
+        e.numCandidates = numCandidates;
+        e.numSelected = topK.size();
+        e.commit();
+    }
+
+    @Override
+    public void onImproved(State best) {
+        ImprovementEvent e = new ImprovementEvent();
+        e.score = best.getScore();
+        e.depth = best.depth;
+        e.numBlocks = best.numBlocks();
+        e.commit();
+    }
+
+    @Override
+    public void onPhase(Phase phase, long nanos) {
+        PhaseEvent e = new PhaseEvent();
+        if (!e.isEnabled())
+            return;
+        e.phase = phase.name();
+        e.nanos = nanos;
+        e.commit();
+    }
+}
@@ -0,0 +1,18 @@
+package solver;
+
+// The optimal defects known from the literature (OEIS A276523) for n = 3..65
+public class KnownOptima {
+    static final int FIRST_N = 3;
+    static final int[] DEFECTS = {
+            2, 4, 4, 5, 5, 6, 6, 8, 6, 7, 8, 6, 8, 8, 8, 8, 8, 9, 9, 9,   // n = 3..22
+            8, 9, 10, 9, 10, 9, 9, 11, 11, 10, 12, 12, 11, 12, 11, 10,  // n = 23..38
+            11, 12, 13, 12, 12, 12, 13, 13, 12, 14, 12, 13, 14, 13,     // n = 39..52
+            14, 15, 14, 14, 15, 15, 14, 14, 15, 16, 15, 15, 16,         // n = 53..65
+    };
+
+    // The optimal defect for n, or -1 if it isn't known
+    static int defect(int n) {
+        int i = n - FIRST_N;
+        return i >= 0 && i < DEFECTS.length? DEFECTS[i]: -1;
+    }
+}
@@ -0,0 +1,239 @@
+package solver;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// A large-neighbourhood search run on the best state once the search is over. Each round picks
+// lns.candidates neighbourhoods of the best tiling -- a connected group of up to lns.size blocks
+// grown from one of its smallest or largest blocks -- and tries, in parallel, to re-tile the
+// cells of each with blocks of new distinct shapes whose areas bring the score below the current
+// one. The best of the re-tilings found replaces the best state.
+//
+// The re-tiling is a depth-first fill of the first free cell (as in ExactSolver) limited to
+// lns.max_nodes placements per neighbourhood, so n is limited to 64.
+class LNSOptimizer {
+    final Problem problem;
+    final int n;
+    final int rounds;
+    final int size;             // max #blocks in a neighbourhood
+    final int numCandidates;    // neighbourhoods tried per round
+    final long maxNodes;
+    final long timeBudgetNanos; // 0 for no limit
+    final int numThreads;
+    final long full;            // the bits of a filled row
+
+    final LongAdder numNodes = new LongAdder();
+    int numImproved;            // rounds that improved the score
+
+    LNSOptimizer(Problem problem, Properties prop) {
+        this.problem = problem;
+        n = problem.n;
+        rounds = Integer.parseInt(prop.getProperty("lns.rounds", "0"));
+        size = Integer.parseInt(prop.getProperty("lns.size", "4"));
+        numThreads = Integer.parseInt(prop.getProperty("threads", "1"));
+        numCandidates = Integer.parseInt(prop.getProperty("lns.candidates", String.valueOf(Math.max(4, numThreads))));
+        maxNodes = Long.parseLong(prop.getProperty("lns.max_nodes", "100000"));
+        timeBudgetNanos = Long.parseLong(prop.getProperty("lns.time_ms", "0")) * 1_000_000;
+        full = n == 64? -1L: (1L << n) - 1;
+    }
+
+    State optimize(State best, SplittableRandom rnd) {
+        if (n > 64) {
+            System.err.println("LNS is limited to n <= 64");
+            return best;
+        }
+
+        long start = System.nanoTime();
+        int initialScore = best.getScore();
+        int round = 0;
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            for (; round < rounds; round++) {
+                if (best.getScore() <= problem.lowerBound())
+                    break;
+                if (timeBudgetNanos > 0 && System.nanoTime() - start >= timeBudgetNanos)
+                    break;
+
+                State current = best;
+                SplittableRandom[] streams = new SplittableRandom[numCandidates];
+                for (int i = 0; i < numCandidates; i++)
+                    streams[i] = rnd.split();
+
+                // in the order of the streams, so that a seeded run picks the same re-tiling
+                List<State> retiled = pool.submit(() -> Arrays.stream(streams).parallel()
+                        .map(r -> retile(current, r))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList())).get();
+
+                for (State s: retiled) {
+                    if (s.getScore() < best.getScore())
+                        best = s;
+                }
+                if (best != current)
+                    numImproved++;
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        System.err.println(String.format("LNS: score %d -> %d in %d rounds (%d improving, %d placements) in %.3f s",
+                initialScore, best.getScore(), round, numImproved, numNodes.sum(), (System.nanoTime() - start)/1e9));
+        return best;
+    }
+
+    // A tiling of x with the blocks of a random neighbourhood re-tiled so that it scores less than
+    // x, or null if none is found within maxNodes placements
+    State retile(State x, SplittableRandom rnd) {
+        int[] blocks = x.blocks;
+        boolean[] inRegion = neighbourhood(x, rnd);
+
+        long[] rows = new long[n];  // the cells not to be re-tiled
+        boolean[] used = new boolean[problem.numShapes];
+        int outMin = Integer.MAX_VALUE, outMax = 0, numOut = 0, free = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            int p = blocks[i], area = Rect.area(p);
+            if (inRegion[i]) {
+                free += area;
+                continue;
+            }
+            numOut++;
+            outMin = Math.min(outMin, area);
+            outMax = Math.max(outMax, area);
+            used[problem.shapeId(p)] = true;
+
+            int r = p >>> 24, c = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            long mask = (w == 64? -1L: (1L << w) - 1) << c;
+            for (int k = r; k < r + h; k++)
+                rows[k] |= mask;
+        }
+
+        // the areas that keep the score at target or below
+        int target = x.getScore() - 1;
+        if (numOut == 0 || outMax - outMin > target)
+            return null;
+        int lo = Math.max(1, outMax - target);
+        int hi = Math.min(outMin + target, free);
+
+        List<int[]> shapes = new ArrayList<>();   // { w, h, shape id }, w along a row
+        for (int w = 1; w <= n; w++) {
+            for (int h = 1; h <= n; h++) {
+                int area = w*h;
+                if (area >= lo && area <= hi && !used[problem.shapeId(w, h)])
+                    shapes.add(new int[] { w, h, problem.shapeId(w, h) });
+            }
+        }
+        for (int i = shapes.size() - 1; i > 0; i--)  // a different order for each neighbourhood
+            Collections.swap(shapes, i, rnd.nextInt(i + 1));
+
+        int[] placed = new int[free];
+        long[] nodes = new long[1];
+        int m = fill(rows, 0, shapes, used, free, outMin, outMax, target, placed, 0, nodes);
+        numNodes.add(nodes[0]);
+        if (m < 0)
+            return null;
+
+        int[] packed = new int[numOut + m];
+        int j = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (!inRegion[i])
+                packed[j++] = blocks[i];
+        }
+        System.arraycopy(placed, 0, packed, j, m);
+        State s = new State(problem, x.depth, packed);
+        return !s.isInfeasible() && s.getScore() < x.getScore()? s: null;
+    }
+
+    // Fill the free cells with shapes not yet used, keeping the areas of all the blocks (min and
+    // max so far) within target of each other, and return the #blocks placed (in placed[]) or -1
+    // if they can't be filled
+    int fill(long[] rows, int r, List<int[]> shapes, boolean[] used, int free, int min, int max, int target,
+             int[] placed, int m, long[] nodes) {
+        if (free == 0)
+            return m;
+        if (free < max - target || nodes[0] >= maxNodes)
+            return -1;
+
+        while (rows[r] == full)
+            r++;
+        int c = Long.numberOfTrailingZeros(~rows[r]);
+        int run = Long.numberOfTrailingZeros((rows[r] | ~full) >>> c);   // free cells from c on
+        if (c + run > n)
+            run = n - c;
+
+        for (int[] s: shapes) {
+            int w = s[0], h = s[1];
+            int area = w*h;
+            if (used[s[2]] || w > run || r + h > n || area > free
+                    || Math.max(max, area) - Math.min(min, area) > target)
+                continue;
+            long mask = (w == 64? -1L: (1L << w) - 1) << c;
+            if (!ExactSolver.fits(rows, r, h, mask))
+                continue;
+
+            nodes[0]++;
+            for (int k = r; k < r + h; k++)
+                rows[k] |= mask;
+            used[s[2]] = true;
+            placed[m] = new Rect(r, c, w, h).pack();
+
+            int done = fill(rows, r, shapes, used, free - area, Math.min(min, area), Math.max(max, area), target,
+                    placed, m+1, nodes);
+            if (done >= 0)
+                return done;
+
+            used[s[2]] = false;
+            for (int k = r; k < r + h; k++)
+                rows[k] &= ~mask;
+        }
+        return -1;
+    }
+
+    // A connected group of up to size blocks (but not all of them) grown at random from a smallest
+    // or a largest block of x, one of which has to go for the score to drop. The blocks adjacent to
+    // the group are those with a cell on the border of its bitboard.
+    boolean[] neighbourhood(State x, SplittableRandom rnd) {
+        int[] blocks = x.blocks;    // sorted by area
+        int k = blocks.length;
+        boolean[] in = new boolean[k];
+        int first = rnd.nextBoolean()? 0: k-1;
+        in[first] = true;
+        Bitboard region = Bitboard.of(n, blocks[first]);
+
+        List<Integer> adjacent = new ArrayList<>();
+        for (int m = 1; m < Math.min(size, k-1); m++) {
+            Bitboard border = region.border();
+            adjacent.clear();
+            for (int i = 0; i < k; i++) {
+                if (!in[i] && border.intersects(blocks[i]))
+                    adjacent.add(i);
+            }
+            if (adjacent.isEmpty())
+                break;
+            int i = adjacent.get(rnd.nextInt(adjacent.size()));
+            in[i] = true;
+            region.place(blocks[i]);
+        }
+        return in;
+    }
+
+    // Whether two packed rects share an edge (of non-zero length)
+    static boolean adjacent(int p, int q) {
+        int x1 = p >>> 24, y1 = (p >>> 16) & 0xff, w1 = (p >>> 8) & 0xff, h1 = p & 0xff;
+        int x2 = q >>> 24, y2 = (q >>> 16) & 0xff, w2 = (q >>> 8) & 0xff, h2 = q & 0xff;
+        if (y1 + w1 == y2 || y2 + w2 == y1)
+            return x1 < x2 + h2 && x2 < x1 + h1;
+        if (x1 + h1 == x2 || x2 + h2 == x1)
+            return y1 < y2 + w2 && y2 < y1 + w1;
+        return false;
+    }
+}
@@ -1,29 +1,56 @@
 package solver;
-import java.io.BufferedWriter;
 import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
 
 class MondrianSolver {
 
 	public static void main(String[] args) throws Exception {
 		if (args.length < 2) {
-			System.err.println("usage MondrianSolver <n> <init.properties>");
+			System.err.println("usage MondrianSolver <n> <init.properties> [<checkpoint to resume from>]");
 			return;
 		}
 
 		Properties prop = new Properties();
 		prop.load(new FileReader(args[1]));
+		if (args.length > 2 && !prop.containsKey("checkpoint.file"))
+			prop.setProperty("checkpoint.file", args[2]); // keep checkpointing into the same file
 
-		StochasticBestFirstSearch se = new StochasticBestFirstSearch(Integer.parseInt(args[0]), prop);
+		State bestState;
+		List<State> gallery = null;
+		int galleryK = Integer.parseInt(prop.getProperty("gallery", "0"));
+		if (prop.getProperty("engine", "beam").equals("anneal")) {
+			bestState = new AnnealingSolver(Integer.parseInt(args[0]), prop).solve();
+			if (bestState == null) {
+				System.err.println("No feasible tiling found");
+				return;
+			}
+		}
+		else if (prop.getProperty("engine", "beam").equals("exact")) {
+			bestState = new ExactSolver(Integer.parseInt(args[0]), prop).solve();
+			if (bestState == null) {
+				System.err.println("No tiling found within the range of scores searched");
+				return;
+			}
+		}
+		else {
+			StochasticBestFirstSearch se = new StochasticBestFirstSearch(Integer.parseInt(args[0]), prop);
+			if (args.length > 2)
+				Checkpoint.restore(se, Paths.get(args[2]));
+			bestState = se.epoch();
+			if (galleryK > 0)
+				gallery = se.topStates(galleryK);
+		}
 
-		State bestState = se.epoch();
 		System.err.println(
 				String.format("Best state: %s",
 						bestState.toString())
 		);
 		boolean toColor = Boolean.parseBoolean(prop.getProperty("color", "false"));
-		State.toSVG(bestState, toColor);
+		SplittableRandom rnd = prop.containsKey("seed")? // the colours too are then the same across runs
+				new SplittableRandom(Long.parseLong(prop.getProperty("seed"))): new SplittableRandom();
+		State.toSVG(bestState, toColor, rnd);
+		if (gallery != null)
+			SVGWriter.writeGallery(gallery, SVGWriter.solutionFile(bestState.problem.n, "-gallery"), toColor, rnd);
 	}
 }
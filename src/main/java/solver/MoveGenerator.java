@@ -0,0 +1,73 @@
+package solver;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+// One of the ways of generating the candidate moves of an expansion (bisection, spiral or merge)
+// with its accounting over the search: the time spent in it (if timed), the #children it offered,
+// how many of them were selected into the beam and how many of those improved on their parent (or
+// on the best state). The counters are updated concurrently by the workers of a parallel search.
+class MoveGenerator {
+    final SearchListener.Phase phase;
+    final Predicate<State> applies;             // whether the generator is run on a state at all
+    final BiConsumer<State, TopKMoves> moves;   // offers the moves of a state
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAdder offered = new LongAdder();
+    final LongAdder selected = new LongAdder();
+    final LongAdder improvements = new LongAdder(); // selected children scoring less than their parent
+    final LongAdder newBests = new LongAdder();     // ... less than the best state at the time
+
+    MoveGenerator(SearchListener.Phase phase, Predicate<State> applies, BiConsumer<State, TopKMoves> moves) {
+        this.phase = phase;
+        this.applies = applies;
+        this.moves = moves;
+    }
+
+    // Offer the moves of x, returning the time taken (0 unless timed)
+    long generate(State x, TopKMoves topK, boolean timed) {
+        long t = timed? System.nanoTime(): 0;
+        int numOffered = topK.numOffered;
+        moves.accept(x, topK);
+        if (timed) {
+            t = System.nanoTime() - t;
+            nanos.add(t);
+        }
+
+        calls.increment();
+        offered.add(topK.numOffered - numOffered);
+        return t;
+    }
+
+    // A child of x generated here made it into the beam
+    void selected(State x, State child, int bestScore) {
+        selected.increment();
+        if (!child.isInfeasible() && child.getScore() < x.getScore()) {
+            improvements.increment();
+            if (child.getScore() < bestScore)
+                newBests.increment();
+        }
+    }
+
+    // Improvements per expansion it was run on, with a prior of 1 so that a generator isn't written
+    // off before it has been tried a few times. Counting expansions rather than the time taken keeps
+    // a seeded (sequential) search picking the same generators on every run, and unlike counting
+    // children it doesn't favour the generators that offer only a few.
+    double rate() {
+        return (improvements.sum() + 1) / (calls.sum() + 1.0);
+    }
+
+    static void report(List<MoveGenerator> generators, PrintStream out) {
+        out.println("Generator   calls    time(ms)  children    selected  improving  new-best  improving/ms  improving/call");
+        for (MoveGenerator g: generators) {
+            out.println(String.format("%-9s %7d %11.1f %9d %11d %10d %9d %13.3f %15.3f",
+                    g.phase, g.calls.sum(), g.nanos.sum()/1e6, g.offered.sum(), g.selected.sum(),
+                    g.improvements.sum(), g.newBests.sum(), g.improvements.sum()/Math.max(1e-3, g.nanos.sum()/1e6),
+                    g.improvements.sum()/Math.max(1.0, g.calls.sum())));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package solver;
+
+import java.io.FileReader;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs several independent searches (islands) on their own threads, each with its own seed and
+// parameters, which exchange their best states every migration.interval visits through a
+// lock-free Incumbent. An island prunes against the best state found by any of them.
+//
+// The #islands is given by islands (the #processors by default). Island i takes the properties
+// of the file overridden by those prefixed with island.<i>. (e.g. island.2.beamsize=40) and
+// seed + i as its seed; unless given, its sampling cycles through uniform, biased and weighted,
+// and a checkpoint.file is suffixed with .island<i>.
+class PortfolioSolver {
+    static final String[] SAMPLINGS = { "uniform", "biased", "weighted" };
+
+    static Properties islandProperties(Properties base, int i, long seed) {
+        Properties prop = new Properties();
+        String prefix = "island." + i + ".";
+        for (String key: base.stringPropertyNames()) {
+            if (!key.startsWith("island."))
+                prop.setProperty(key, base.getProperty(key));
+        }
+        if (!prop.containsKey("listeners"))
+            prop.setProperty("listeners", ""); // improvements are reported by the Incumbent
+        if (prop.getProperty("sampling") == null)
+            prop.setProperty("sampling", SAMPLINGS[i % SAMPLINGS.length]);
+        prop.setProperty("seed", String.valueOf(seed + i));
+        prop.setProperty("threads", "1");
+        String checkpoint = prop.getProperty("checkpoint.file", "");
+        if (!checkpoint.isEmpty())  // one file per island, or they'd overwrite each other's
+            prop.setProperty("checkpoint.file", checkpoint + ".island" + i);
+
+        for (String key: base.stringPropertyNames()) {
+            if (key.startsWith(prefix))
+                prop.setProperty(key.substring(prefix.length()), base.getProperty(key));
+        }
+        return prop;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage PortfolioSolver <n> <init.properties>");
+            return;
+        }
+
+        int n = Integer.parseInt(args[0]);
+        Properties base = new Properties();
+        try (FileReader reader = new FileReader(args[1])) {
+            base.load(reader);
+        }
+        int numIslands = Integer.parseInt(base.getProperty("islands",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long seed = base.containsKey("seed")? Long.parseLong(base.getProperty("seed")): new SplittableRandom().nextLong();
+
+        Incumbent incumbent = new Incumbent();
+        List<StochasticBestFirstSearch> islands = new ArrayList<>(numIslands);
+        for (int i = 0; i < numIslands; i++) {
+            StochasticBestFirstSearch se = new StochasticBestFirstSearch(n, islandProperties(base, i, seed));
+            se.shared = incumbent;
+            se.island = i;
+            islands.add(se);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numIslands);
+        try {
+            List<Future<State>> done = new ArrayList<>(numIslands);
+            for (StochasticBestFirstSearch se: islands)
+                done.add(pool.submit(se::epoch));
+            for (int i = 0; i < numIslands; i++) {
+                State best = done.get(i).get();
+                StochasticBestFirstSearch se = islands.get(i);
+                System.err.println(String.format("Island %d (sampling = %s, beamsize = %d, maxdepth = %d, seed = %d): " +
+                                "score = %s, visited = %d",
+                        i, se.uniformSampling? "uniform": se.weightedSampling? "weighted": "biased",
+                        se.beamSize, se.maxDepth, se.seed, best != null? best.getScore(): "-", se.numVisited));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        State bestState = incumbent.get();
+        if (bestState == null) {
+            System.err.println("No feasible state found");
+            return;
+        }
+        System.err.println(String.format("Best state: %s", bestState));
+        boolean toColor = Boolean.parseBoolean(base.getProperty("color", "false"));
+        State.toSVG(bestState, toColor, new SplittableRandom(seed));
+    }
+}
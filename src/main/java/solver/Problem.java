@@ -0,0 +1,81 @@
+package solver;
+
+import java.util.SplittableRandom;
+
+// The per-solve context shared by all the states of a search: the size of the square
+// and the tables derived from it. Solves for different n each have their own, so that
+// they can run side by side in one JVM.
+public class Problem {
+    final int n;
+    final int maxScore;
+    final long[] areaHashes;  // random 64-bit code for each area value (Zobrist hashing)
+    final int[] shapeIds;     // w*(n+1)+h --> a dense id shared by congruent rects
+    final int numShapes;
+    final boolean checkScore; // cross-check the incremental score and conflicts against full recomputations
+    final boolean checkTiling; // check every state constructed for overlaps and coverage (see Bitboard)
+
+    // minDefect[m] is a lower bound on the defect of any tiling that can be reached by splits alone
+    // from one whose smallest block has area m: the blocks of such a tiling have distinct shapes and
+    // areas within [L, L+d] for some L <= m, so the shapes with an area in that range must add up
+    // to at least n*n. minDefect[maxScore] bounds the defect of all the tilings (of two or more blocks).
+    final int[] minDefect;
+
+    Problem(int n) {
+        this(n, false);
+    }
+
+    Problem(int n, boolean checkScore) {
+        this(n, checkScore, false);
+    }
+
+    Problem(int n, boolean checkScore, boolean checkTiling) {
+        this.n = n;
+        this.maxScore = n*n;
+        this.checkScore = checkScore;
+        this.checkTiling = checkTiling;
+
+        areaHashes = new long[maxScore+1];
+        SplittableRandom rnd = new SplittableRandom(n);  // fixed seed -- signatures are reproducible
+        for (int a = 1; a <= maxScore; a++)
+            areaHashes[a] = rnd.nextLong();
+
+        shapeIds = new int[(n+1)*(n+1)];
+        int numShapes = 0;
+        for (int w = 1; w <= n; w++) {
+            for (int h = w; h <= n; h++) {
+                shapeIds[w*(n+1) + h] = numShapes;
+                shapeIds[h*(n+1) + w] = numShapes++;
+            }
+        }
+        this.numShapes = numShapes;
+
+        long[] areaSums = new long[maxScore+1];  // total area of the shapes with an area <= a
+        for (int w = 1; w <= n; w++) {
+            for (int h = w; h <= n; h++) {
+                if (h < n || w < n) // a tiling has at least two blocks
+                    areaSums[w*h] += w*h;
+            }
+        }
+        for (int a = 1; a <= maxScore; a++)
+            areaSums[a] += areaSums[a-1];
+
+        minDefect = new int[maxScore+1];
+        int best = maxScore;
+        for (int lo = 1, hi = 1; lo <= maxScore; lo++) { // the least hi such that [lo, hi] suffices
+            hi = Math.max(hi, lo);
+            while (hi < maxScore && areaSums[hi] - areaSums[lo-1] < maxScore)
+                hi++;
+            if (areaSums[hi] - areaSums[lo-1] >= maxScore)
+                best = Math.min(best, hi - lo);
+            minDefect[lo] = best;
+        }
+    }
+
+    // A lower bound on the defect of the tilings of the square
+    int lowerBound() { return minDefect[maxScore]; }
+
+    // A dense id in [0, numShapes) shared by congruent rects
+    int shapeId(int w, int h) { return shapeIds[w*(n+1) + h]; }
+
+    int shapeId(int p) { return shapeId((p>>>8) & 0xff, p & 0xff); }
+}
@@ -0,0 +1,18 @@
+package solver;
+
+// A single self-overwriting progress line on stderr
+public class ProgressListener implements SearchListener {
+
+    @Override
+    public void onSampled(State x, int numVisited, int queueSize) {
+        if (numVisited%10==0)
+            System.err.print(
+                String.format("Visited %d states; #states remaining in queue: %d\r",
+                    numVisited, queueSize));
+    }
+
+    @Override
+    public void onFinished(State best, int numVisited, int queueSize) {
+        System.err.println();
+    }
+}
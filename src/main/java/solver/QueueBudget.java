@@ -0,0 +1,63 @@
+package solver;
+
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+// Keeps the state queue of a search within a budget, given as a #states and/or an approximate
+// #bytes, by evicting the worst queued states (highest score, then lowest depth) to make room
+// for better ones. The worst state is found with a heap from which the states leaving the queue
+// otherwise (e.g. when sampled) are dropped lazily: they are recognized by a slot of -1.
+// The layouts remembered by the transposition table count against the #bytes too.
+public class QueueBudget {
+    final int maxStates;
+    final long maxBytes;      // 0 for no limit
+    long bytes;               // estimated footprint of the queued states
+    long maxBytesSeen;        // of the queue and the table together
+    TranspositionTable table; // null if transpositions are off
+    final PriorityQueue<State> worstFirst = new PriorityQueue<>(Collections.reverseOrder());
+
+    QueueBudget(int maxStates, long maxBytes) {
+        this.maxStates = maxStates;
+        this.maxBytes = maxBytes;
+    }
+
+    // Approximate #bytes a queued state takes up: the object, its blocks array and its share of
+    // the StateMap (a key and a reference at a load factor of 0.5), the StateSampler (a reference,
+    // a weight and a Fenwick node, with up to 2x slack), the heap here and the sampler's (with
+    // biased sampling)
+    static long footprint(State x) {
+        long blocks = (16 + 4L*x.blocks.length + 7) & ~7L;
+        return 48 + blocks + 24 + 32 + 16;
+    }
+
+    boolean fits(int numStates, State x) {
+        return numStates < maxStates && (maxBytes == 0 || total() + footprint(x) <= maxBytes);
+    }
+
+    // Estimated footprint of the queued states and the transposition table
+    long total() {
+        return table == null? bytes: bytes + table.bytes();
+    }
+
+    void added(State x) {
+        bytes += footprint(x);
+        maxBytesSeen = Math.max(maxBytesSeen, total());
+        worstFirst.add(x);
+    }
+
+    void removed(State x) {
+        bytes -= footprint(x);
+    }
+
+    // The worst state still queued (after x.slot is reset by the sampler), given the #queued states
+    State worst(StateSampler sampler) {
+        if (worstFirst.size() > 2*sampler.size() + 1024) { // mostly stale by now
+            worstFirst.clear();
+            for (int i = 0; i < sampler.size(); i++)
+                worstFirst.add(sampler.slots[i]);
+        }
+        while (!worstFirst.isEmpty() && worstFirst.peek().slot < 0)
+            worstFirst.poll();
+        return worstFirst.peek();
+    }
+}
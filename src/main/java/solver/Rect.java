@@ -10,8 +10,7 @@ public class Rect implements Comparable<Rect> {
     int w, h;
     int area;
 
-    static String[] fillStyles = {"gray", "red", "blue", "yellow"};
-    static int numColors = fillStyles.length;
+    static final String[] FILL_STYLES = {"gray", "red", "blue", "yellow"}; // see SVGWriter.Palette
 
     Rect(int x, int y, int w, int h) {
         this.x = x;
@@ -27,8 +26,27 @@ public class Rect implements Comparable<Rect> {
 
     int getArea() { return area; }
 
-    Rect getReflectedHorizontally() {
-        Rect reflected = new Rect(x, State.n - (y + w), w, h);
+    // A rect packed into a single int with a byte per coordinate (x, y, w, h), which suffices for n <= 255
+    int pack() { return x<<24 | y<<16 | w<<8 | h; }
+
+    static Rect unpack(int p) { return new Rect(p>>>24, (p>>>16) & 0xff, (p>>>8) & 0xff, p & 0xff); }
+
+    static int area(int p) { return ((p>>>8) & 0xff) * (p & 0xff); }
+
+    static boolean congruent(int w1, int h1, int w2, int h2) {
+        return w1==w2 && h1==h2 || w1==h2 && h1==w2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rect && ((Rect)o).pack() == pack();
+    }
+
+    @Override
+    public int hashCode() { return pack(); }
+
+    Rect getReflectedHorizontally(int n) { // within an n x n square
+        Rect reflected = new Rect(x, n - (y + w), w, h);
         return reflected;
     }
 
@@ -47,18 +65,19 @@ public class Rect implements Comparable<Rect> {
         Rect a, b;
         List<Rect> children = new ArrayList<>(2);
 
-        if (vertical && (y+w<=cut || cut<=y))
+        // cut is the offset of the split line relative to the top-left corner
+        if (vertical && (w<=cut || cut<=0))
             return null;
-        if (!vertical && (x+h<=cut || cut<=x))
+        if (!vertical && (h<=cut || cut<=0))
             return null;
 
         if (vertical) {
             a = new Rect(x, y, cut, h);
-            b = new Rect(x, y+cut, y+w-cut, h);
+            b = new Rect(x, y+cut, w-cut, h);
         }
         else {
             a = new Rect(x, y, w, cut);
-            b = new Rect(x+cut, y, w, x+h-cut);
+            b = new Rect(x+cut, y, w, h-cut);
         }
         children.add(a);
         children.add(b);
@@ -103,24 +122,6 @@ public class Rect implements Comparable<Rect> {
         return rect_svg;
     }
 
-    String selectRandomColor() {
-        if (numColors<=0) return "none";
-
-        int i = (int)(Math.random()* numColors);
-        String tmp = fillStyles[i];
-        fillStyles[i] = fillStyles[numColors-1];
-        fillStyles[numColors-1] = tmp;
-        numColors--;
-        return tmp;
-    }
-
-    public String toSVGColor(int k, int stroke_width, String colorName) {
-        String rect_svg = String.format(
-                "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" style=\"stroke-width:%d;stroke:%s;fill:%s\"/>",
-                this.y*k, this.x*k, this.w*k, this.h*k, stroke_width, colorName, selectRandomColor());
-        return rect_svg;
-    }
-
     public String toSVGColor(int k, int stroke_width, String colorName, String fillColor) {
         String rect_svg = String.format(
                 "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" style=\"stroke-width:%d;stroke:%s;fill:%s\"/>",
@@ -0,0 +1,143 @@
+package solver;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+// Renders tilings as SVG drawings in an HTML page, writing straight to a buffered channel
+// rather than building the document in memory. The rects are written without String.format
+// and the unit grid is a single path of 2(n+1) lines instead of n*n rects. A page holds the
+// best tiling of a run or a gallery of several.
+class SVGWriter implements Closeable {
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX = 600;         // width of a drawing (in pixels)
+    static final int GALLERY_MAX = 300; // ... in a gallery
+
+    final Writer out;
+
+    SVGWriter(Path file) throws IOException {
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out = new BufferedWriter(Channels.newWriter(ch, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+        out.write("<!DOCTYPE html>\n<html>\n<body>\n");
+    }
+
+    SVGWriter(Writer out) { // just the drawings, e.g. into a StringWriter
+        this.out = out;
+    }
+
+    // The fill colours of one drawing, each of which is used at most once (by a randomly
+    // chosen rect) so that a drawing never repeats a colour; the remaining rects are unfilled
+    static class Palette {
+        final String[] fillStyles = Rect.FILL_STYLES.clone();
+        int numColors = fillStyles.length;
+        final SplittableRandom rnd;
+
+        Palette(SplittableRandom rnd) { this.rnd = rnd; }
+
+        String next() {
+            if (numColors<=0) return "none";
+
+            int i = rnd.nextInt(numColors);
+            String tmp = fillStyles[i];
+            fillStyles[i] = fillStyles[numColors-1];
+            fillStyles[numColors-1] = tmp;
+            numColors--;
+            return tmp;
+        }
+    }
+
+    void caption(State x) throws IOException {
+        int n = x.problem.n;
+        List<Rect> sortedRects = x.getBlocks().stream().sorted(Rect::compareTo).collect(Collectors.toList());
+        out.write(String.format("<div>%dx%d solution: Score = %d (%s), #Rectangles = %d</div>",
+                n, n, x.getScore(), sortedRects, x.numBlocks()));
+        out.write("<br><br>");
+    }
+
+    // A drawing of x with k pixels per unit; the colours (if any) are picked with rnd
+    void draw(State x, int k, boolean color, SplittableRandom rnd) throws IOException {
+        int n = x.problem.n;
+        int size = n*k;
+        out.write("<svg width=\"");
+        out.write(Integer.toString(size));
+        out.write("\" height=\"");
+        out.write(Integer.toString(size));
+        out.write("\">\n");
+
+        Palette palette = color? new Palette(rnd): null;
+        for (int p: x.blocks) {
+            boolean filled = color && (p >>> 16) != 0; // the block at the origin is left unfilled
+            rect(p, k, filled? 5: 3, filled? palette.next(): "none");
+        }
+
+        // the grid
+        out.write("<path d=\"");
+        for (int i = 0; i <= n; i++) {
+            String at = Integer.toString(i*k);
+            out.write("M0 " + at + "H" + size + "M" + at + " 0V" + size);
+        }
+        out.write("\" style=\"stroke-width:1;stroke:black;fill:none\"/>\n");
+        out.write("</svg>");
+    }
+
+    void rect(int p, int k, int strokeWidth, String fill) throws IOException {
+        out.write("<rect x=\"");
+        out.write(Integer.toString(((p >>> 16) & 0xff)*k));  // y is the column
+        out.write("\" y=\"");
+        out.write(Integer.toString((p >>> 24)*k));
+        out.write("\" width=\"");
+        out.write(Integer.toString(((p >>> 8) & 0xff)*k));
+        out.write("\" height=\"");
+        out.write(Integer.toString((p & 0xff)*k));
+        out.write("\" style=\"stroke-width:");
+        out.write(Integer.toString(strokeWidth));
+        out.write(";stroke:black;fill:");
+        out.write(fill);
+        out.write("\"/>\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write("</body>\n</html>");
+        out.close();
+    }
+
+    static Path solutionFile(int n, String suffix) {
+        return Paths.get(String.format("solutions/mondrian-%d-%d%s.htm", n, n, suffix));
+    }
+
+    // A page with the best state of a run
+    static void write(State best, Path file, boolean color, SplittableRandom rnd) throws IOException {
+        try (SVGWriter w = new SVGWriter(file)) {
+            w.caption(best);
+            w.draw(best, MAX/best.problem.n, color, rnd);
+        }
+    }
+
+    // A page with a number of (distinct) states of a run, best first
+    static void writeGallery(List<State> states, Path file, boolean color, SplittableRandom rnd) throws IOException {
+        try (SVGWriter w = new SVGWriter(file)) {
+            for (State x: states) {
+                w.out.write("<div style=\"display:inline-block;margin:10px;vertical-align:top\">\n");
+                w.out.write(String.format("<div>Score = %d, #Rectangles = %d</div>\n", x.getScore(), x.numBlocks()));
+                w.draw(x, GALLERY_MAX/x.problem.n, color, rnd);
+                w.out.write("</div>\n");
+            }
+        }
+        System.err.println(String.format("Wrote a gallery of %d states to %s", states.size(), file));
+    }
+}
@@ -1,25 +1,25 @@
 package solver;
 
-import java.util.stream.IntStream;
+import java.util.SplittableRandom;
 
 public class Sampler {
-    static int sample(int[] x) { // x is sorted
-        float[] probs = new float[x.length];
-        int sum = IntStream.of(x).sum();
+    static int sample(int[] x, SplittableRandom rnd) { // x is sorted
+        return sample(x, x.length, rnd);
+    }
 
-        for (int i=0; i<x.length; i++)
-            probs[i] = x[i]/(float)sum;
+    static int sample(int[] x, int len, SplittableRandom rnd) { // sample from x[0..len) in proportion to the values
+        long sum = 0;
+        for (int i=0; i<len; i++)
+            sum += x[i];
 
-        float y = 0;
-        float r = (float)Math.random();
+        double r = rnd.nextDouble() * sum;
+        long y = 0;
 
-        for (int i=0; i<x.length-1; i++) {
-            y += probs[i];
+        for (int i=0; i<len-1; i++) {
+            y += x[i];
             if (r < y)
                 return i;
         }
-        return x.length-1;
+        return len-1;
     }
 }
-
-
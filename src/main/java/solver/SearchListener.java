@@ -0,0 +1,77 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Callbacks from the hot loop of StochasticBestFirstSearch. All methods have empty defaults
+// so that a listener only overrides what it needs. The search holds a null listener when
+// none is attached, in which case nothing is timed, formatted or allocated on its behalf.
+// In parallel mode the callbacks arrive concurrently from the worker threads.
+public interface SearchListener {
+    enum Phase { SAMPLE, BISECTION, SPIRAL, MERGE, SELECT, INSERT }
+
+    default void onSampled(State x, int numVisited, int queueSize) {}
+    default void onMaxDepth(State x) {}
+    default void onVisited(State x, State removed, int queueSize) {} // a feasible state taken off the queue
+    default void onImproved(State best) {}
+    default void onGenerated(State x, Phase generator, int numChildren) {}
+    default void onSelected(State x, int numCandidates, List<State> topK) {}
+    default void onInfeasible(State x, boolean admitted) {}
+    default void onDuplicate(State x, State seen) {}
+    default void onTransposition(State x, State seen) {} // a layout lookup; seen is null on a miss
+    default void onPruned(State x, boolean evicted) {}  // on insertion, or evicted when sampled
+    default void onDropped(State x, boolean evicted, long queueBytes) {} // evicted from a full queue, or not admitted to it
+    default void onAdded(State x, int queueSize) {}
+    default void onPhase(Phase phase, long nanos) {}
+    default void onFinished(State best, int numVisited, int queueSize) {}
+
+    // Build the listener named by a comma separated list (verbose, progress, metrics, incumbents, jfr);
+    // returns null for an empty list
+    static SearchListener create(String names) {
+        List<SearchListener> listeners = new ArrayList<>();
+        for (String name: names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty())
+                continue;
+            switch (name) {
+                case "verbose": listeners.add(new VerboseListener()); break;
+                case "progress": listeners.add(new ProgressListener()); break;
+                case "metrics": listeners.add(new SearchMetrics()); break;
+                case "incumbents": listeners.add(new IncumbentListener()); break;
+                case "jfr": listeners.add(new JfrListener()); break;
+                default: throw new IllegalArgumentException("Unknown search listener: " + name);
+            }
+        }
+        return of(listeners);
+    }
+
+    static SearchListener of(List<SearchListener> listeners) {
+        if (listeners.isEmpty())
+            return null;
+        return listeners.size()==1? listeners.get(0): new Multicast(listeners);
+    }
+
+    // Forwards each callback to a list of listeners
+    class Multicast implements SearchListener {
+        final SearchListener[] listeners;
+
+        Multicast(List<SearchListener> listeners) {
+            this.listeners = listeners.toArray(new SearchListener[0]);
+        }
+
+        public void onSampled(State x, int numVisited, int queueSize) { for (SearchListener l: listeners) l.onSampled(x, numVisited, queueSize); }
+        public void onMaxDepth(State x) { for (SearchListener l: listeners) l.onMaxDepth(x); }
+        public void onVisited(State x, State removed, int queueSize) { for (SearchListener l: listeners) l.onVisited(x, removed, queueSize); }
+        public void onImproved(State best) { for (SearchListener l: listeners) l.onImproved(best); }
+        public void onGenerated(State x, Phase generator, int numChildren) { for (SearchListener l: listeners) l.onGenerated(x, generator, numChildren); }
+        public void onSelected(State x, int numCandidates, List<State> topK) { for (SearchListener l: listeners) l.onSelected(x, numCandidates, topK); }
+        public void onInfeasible(State x, boolean admitted) { for (SearchListener l: listeners) l.onInfeasible(x, admitted); }
+        public void onDuplicate(State x, State seen) { for (SearchListener l: listeners) l.onDuplicate(x, seen); }
+        public void onTransposition(State x, State seen) { for (SearchListener l: listeners) l.onTransposition(x, seen); }
+        public void onPruned(State x, boolean evicted) { for (SearchListener l: listeners) l.onPruned(x, evicted); }
+        public void onDropped(State x, boolean evicted, long queueBytes) { for (SearchListener l: listeners) l.onDropped(x, evicted, queueBytes); }
+        public void onAdded(State x, int queueSize) { for (SearchListener l: listeners) l.onAdded(x, queueSize); }
+        public void onPhase(Phase phase, long nanos) { for (SearchListener l: listeners) l.onPhase(phase, nanos); }
+        public void onFinished(State best, int numVisited, int queueSize) { for (SearchListener l: listeners) l.onFinished(best, numVisited, queueSize); }
+    }
+}
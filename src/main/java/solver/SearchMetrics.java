@@ -0,0 +1,167 @@
+package solver;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and timing histograms over a search; safe to update from several workers.
+// A summary is printed on stderr when the search finishes.
+public class SearchMetrics implements SearchListener {
+    static final int NUM_PHASES = Phase.values().length;
+
+    final LongAdder sampled = new LongAdder();
+    final LongAdder expanded = new LongAdder();
+    final LongAdder maxDepthSkips = new LongAdder();
+    final LongAdder improvements = new LongAdder();
+    final LongAdder dedupHits = new LongAdder();
+    final LongAdder transpositionLookups = new LongAdder();
+    final LongAdder transpositionHits = new LongAdder();
+    final LongAdder pruned = new LongAdder();
+    final LongAdder evicted = new LongAdder();
+    final LongAdder budgetEvicted = new LongAdder();
+    final LongAdder budgetRejected = new LongAdder();
+    final LongAccumulator maxQueueBytes = new LongAccumulator(Long::max, 0);
+    final LongAdder infeasibleRejected = new LongAdder();
+    final LongAdder infeasibleAdmitted = new LongAdder();
+    final LongAdder added = new LongAdder();
+    final LongAccumulator maxQueueSize = new LongAccumulator(Long::max, 0);
+    final LongAdder[] generated = new LongAdder[NUM_PHASES];    // #children per generator
+    final Histogram[] phaseTimes = new Histogram[NUM_PHASES];
+    final long startTime = System.nanoTime();
+    volatile long bestTime;     // nanos since startTime at which the last improvement was found
+
+    SearchMetrics() {
+        for (int i = 0; i < NUM_PHASES; i++) {
+            generated[i] = new LongAdder();
+            phaseTimes[i] = new Histogram();
+        }
+    }
+
+    // Counts and total of the recorded values in power-of-two buckets
+    static class Histogram {
+        static final int NUM_BUCKETS = 64;
+        final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder sum = new LongAdder();
+
+        void record(long value) {
+            buckets.incrementAndGet(value <= 0? 0: 64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            sum.add(value);
+        }
+
+        long count() { return count.sum(); }
+
+        double mean() {
+            long c = count();
+            return c == 0? 0: sum.sum()/(double)c;
+        }
+
+        // Upper bound of the bucket holding the given quantile
+        long quantile(double q) {
+            long target = (long)Math.ceil(q * count());
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0)
+                    return i == 0? 0: 1L << Math.min(i, 62);
+            }
+            return 0;
+        }
+    }
+
+    @Override
+    public void onSampled(State x, int numVisited, int queueSize) {
+        sampled.increment();
+        maxQueueSize.accumulate(queueSize);
+    }
+
+    @Override
+    public void onMaxDepth(State x) { maxDepthSkips.increment(); }
+
+    @Override
+    public void onImproved(State best) {
+        improvements.increment();
+        bestTime = System.nanoTime() - startTime;
+    }
+
+    @Override
+    public void onGenerated(State x, Phase generator, int numChildren) {
+        generated[generator.ordinal()].add(numChildren);
+    }
+
+    @Override
+    public void onSelected(State x, int numCandidates, List<State> topK) { expanded.increment(); }
+
+    @Override
+    public void onInfeasible(State x, boolean admitted) {
+        if (admitted) infeasibleAdmitted.increment();
+        else infeasibleRejected.increment();
+    }
+
+    @Override
+    public void onDuplicate(State x, State seen) { dedupHits.increment(); }
+
+    @Override
+    public void onTransposition(State x, State seen) {
+        transpositionLookups.increment();
+        if (seen != null)
+            transpositionHits.increment();
+    }
+
+    @Override
+    public void onPruned(State x, boolean evicted) {
+        (evicted? this.evicted: pruned).increment();
+    }
+
+    @Override
+    public void onDropped(State x, boolean evicted, long queueBytes) {
+        (evicted? budgetEvicted: budgetRejected).increment();
+        maxQueueBytes.accumulate(queueBytes);
+    }
+
+    @Override
+    public void onAdded(State x, int queueSize) {
+        added.increment();
+        maxQueueSize.accumulate(queueSize);
+    }
+
+    @Override
+    public void onPhase(Phase phase, long nanos) { phaseTimes[phase.ordinal()].record(nanos); }
+
+    @Override
+    public void onFinished(State best, int numVisited, int queueSize) {
+        report(System.err, queueSize);
+    }
+
+    void report(PrintStream out, int queueSize) {
+        double secs = (System.nanoTime() - startTime)/1e9;
+        out.println(String.format("Search metrics (%.2f s):", secs));
+        out.println(String.format("  states sampled: %d, expanded: %d (%.1f/s), skipped at max depth: %d",
+                sampled.sum(), expanded.sum(), expanded.sum()/secs, maxDepthSkips.sum()));
+        out.println(String.format("  states added: %d, duplicates: %d, infeasible rejected/admitted: %d/%d",
+                added.sum(), dedupHits.sum(), infeasibleRejected.sum(), infeasibleAdmitted.sum()));
+        out.println(String.format("  pruned by the bound on insertion: %d, evicted when sampled: %d",
+                pruned.sum(), evicted.sum()));
+        if (budgetEvicted.sum() + budgetRejected.sum() > 0)
+            out.println(String.format("  full queue evictions: %d, rejections: %d, estimated footprint: %.1f MB",
+                    budgetEvicted.sum(), budgetRejected.sum(), maxQueueBytes.get()/(double)(1 << 20)));
+        long lookups = transpositionLookups.sum();
+        if (lookups > 0)
+            out.println(String.format("  transposition hits: %d/%d (%.1f%%)",
+                    transpositionHits.sum(), lookups, 100.0*transpositionHits.sum()/lookups));
+        out.println(String.format("  queue size: %d (max %d), improvements: %d (last after %.3f s)",
+                queueSize, maxQueueSize.get(), improvements.sum(), bestTime/1e9));
+        for (Phase g: new Phase[] { Phase.BISECTION, Phase.SPIRAL, Phase.MERGE })
+            out.println(String.format("  children generated by %s: %d", g, generated[g.ordinal()].sum()));
+        for (Phase p: Phase.values()) {
+            Histogram h = phaseTimes[p.ordinal()];
+            if (h.count() == 0)
+                continue;
+            out.println(String.format("  %-9s n=%d mean=%.1fus p50<=%dus p99<=%dus",
+                    p, h.count(), h.mean()/1e3, h.quantile(0.5)/1000, h.quantile(0.99)/1000));
+        }
+    }
+}
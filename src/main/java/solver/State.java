@@ -3,102 +3,100 @@ package solver;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 import static java.lang.Math.*;
 
-class AreaFreq {
-    HashMap<String, Integer> map; // w:h --> freq (>1 implies infeasible state)
-
-    AreaFreq() {
-        map = new HashMap<>();
-    }
-
-    AreaFreq(AreaFreq that) {
-        map = new HashMap<>(that.map);
-    }
-
-    AreaFreq(List<Rect> rects) {
-        this();
-        for (Rect r: rects) {
-            update(r, 1);
-        }
-    }
-
-    void update(Rect r, int delta) {
-        String key = r.key();
-        Integer c = map.get(key);
-        if (c==null)
-            c = new Integer(0);
-
-        c += delta;
-        if (c > 0)
-            map.put(key, c);
-        else
-            map.remove(key);
-    }
-
-    int getFreq(Rect r) {
-        String key = r.key();
-        Integer c = map.get(key);
-        return (c==null)? 0: c;
-    }
-}
-
 public class State implements Comparable<State> {
-    List<Rect> blocks;
-    AreaFreq areaFreq;
+    int[] blocks;   // rectangles packed into ints (see Rect.pack) sorted by area -- an exact-size array
     int score;
     int depth; // depth in the exploration tree
-    Set<Integer> areaSet;   // set of areas of blocks of this state -- quick equivalence check
+    long signature;   // hash of the multiset of areas of blocks of this state -- quick equivalence check
+    int slot = -1;    // position in the search's StateSampler while queued
+    int conflicts;    // #blocks congruent to some other block (counting all but one per shape) -- infeasible if > 0
 
     enum Direction { RIGHT, LEFT, TOP, BOTTOM};
 
-    // global variables to be shared across all instances
-    static int n;
-    static int maxScore;
+    final Problem problem;  // the size of the square and the tables derived from it
+    static final int[] NO_BLOCKS = new int[0];
 
-    State(int n, int depth) { // root state with no partitions
-        blocks = new ArrayList<>(n);
-        if (State.n==0) { // do it only once
-            State.n = n;
-            State.maxScore = n*n;
+    State(int n, int depth) {
+        this(new Problem(n), depth);
+    }
+
+    State(Problem problem, int depth) { // root state with no partitions
+        this.problem = problem;
+        blocks = NO_BLOCKS;
+        score = problem.maxScore;
+        this.depth = depth;
+    }
+
+    State(Problem problem, int depth, int[] packed) { // from packed rects (e.g. read back from a checkpoint)
+        this.problem = problem;
+        this.blocks = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            int shape = problem.shapeId(packed[i]);
+            if (countShape(this.blocks, i, shape) > 0)
+                conflicts++;
+            insert(this.blocks, i, packed[i]);
+            signature += problem.areaHashes[Rect.area(packed[i])];
         }
-        score = maxScore;
 
-        areaSet = new TreeSet<>();
-        areaFreq = new AreaFreq();
+        this.score = incrementalScore();
+        checkConflicts();
+        if (problem.checkTiling)
+            Bitboard.check(this);
         this.depth = depth;
     }
 
     State(final State that, final List<Rect> blocks) {
-        this.blocks = blocks;
-        areaSet = blocks.stream().map(Rect::getArea).distinct().collect(Collectors.toSet());
-        areaFreq = new AreaFreq(blocks);
+        this.problem = that.problem;
+        this.blocks = new int[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            Rect r = blocks.get(i);
+            if (countShape(this.blocks, i, problem.shapeId(r.w, r.h)) > 0)
+                conflicts++;
+            insert(this.blocks, i, r.pack());
+            signature += problem.areaHashes[r.area];
+        }
 
-        this.score = computeScore();
+        this.score = incrementalScore();
+        checkConflicts();
+        if (problem.checkTiling)
+            Bitboard.check(this);
         this.depth = that.depth+1;  // child is deeper by 1 level
     }
 
     State(final State that, Rect parent, List<Rect> children) {
-        blocks = new ArrayList<>();
-        blocks.addAll(that.blocks);
-
-        areaFreq = new AreaFreq(that.areaFreq);
-        areaSet = new TreeSet<>(that.areaSet);
-
-        for (Rect child: children)
-            this.addBlock(child);
-
-        this.removeBlock(parent);
-
-        for (Rect child: children)
-            areaSet.add(child.area);
-
-        areaSet.remove(parent.area);
+        this.problem = that.problem;
+        int k = that.blocks.length;
+        int p = that.indexOf(parent.pack());
+
+        // copy over the parent's blocks except for the replaced one and
+        // slot in the children so that the blocks remain sorted by area
+        blocks = new int[k + children.size() - 1];
+        System.arraycopy(that.blocks, 0, blocks, 0, p);
+        System.arraycopy(that.blocks, p+1, blocks, p, k-p-1);
+        signature = that.signature - problem.areaHashes[parent.area];
+        conflicts = that.conflicts;
+        if (that.conflicts > 0 && countShape(that.blocks, k, problem.shapeId(parent.w, parent.h)) > 1)
+            conflicts--;  // the parent was congruent to another block
+
+        for (int i = 0; i < children.size(); i++) {
+            Rect child = children.get(i);
+            if (countShape(blocks, k-1+i, problem.shapeId(child.w, child.h)) > 0)
+                conflicts++;
+            insert(blocks, k-1+i, child.pack());
+            signature += problem.areaHashes[child.area];
+        }
 
-        this.score = computeScore();
+        this.score = incrementalScore();
+        checkConflicts();
+        if (problem.checkTiling)
+            Bitboard.check(this);
         this.depth = that.depth+1;  // child is deeper by 1 level
     }
 
@@ -109,11 +107,87 @@ public class State implements Comparable<State> {
 
     int getScore() { return score; }
 
+    int numBlocks() { return blocks.length; }
+
+    Rect getBlock(int i) { return Rect.unpack(blocks[i]); }
+
+    // Unpacked copies of the blocks (in no particular order)
+    List<Rect> getBlocks() {
+        List<Rect> rects = new ArrayList<>(blocks.length);
+        for (int b: blocks)
+            rects.add(Rect.unpack(b));
+        return rects;
+    }
+
+    // First position in blocks[0..len) holding an area >= the given one
+    static int lowerBound(int[] blocks, int len, int area) {
+        int lo = 0, hi = len;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Rect.area(blocks[mid]) < area)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Insert a packed block into the sorted prefix blocks[0..len), shifting up the larger ones
+    static void insert(int[] blocks, int len, int packed) {
+        int i = lowerBound(blocks, len, Rect.area(packed));
+        System.arraycopy(blocks, i, blocks, i+1, len-i);
+        blocks[i] = packed;
+    }
+
+    int indexOf(int packed) {
+        int area = Rect.area(packed);
+        for (int i = lowerBound(blocks, blocks.length, area); i < blocks.length && Rect.area(blocks[i]) == area; i++) {
+            if (blocks[i] == packed)
+                return i;
+        }
+        return -1;
+    }
+
+    // The score of the child in which the ith block is replaced by blocks
+    // whose areas range from minArea to maxArea (without constructing it)
+    int scoreAfterReplacing(int i, int minArea, int maxArea) {
+        return max(maxArea, maxAreaExcept(i)) - min(minArea, minAreaExcept(i));
+    }
+
+    // Smallest area among the blocks other than the ith one (MAX_VALUE if there's none)
+    int minAreaExcept(int i) {
+        return blocks.length > 1? Rect.area(blocks[i==0? 1: 0]): Integer.MAX_VALUE;
+    }
+
+    // Largest area among the blocks other than the ith one (0 if there's none)
+    int maxAreaExcept(int i) {
+        int k = blocks.length;
+        return k > 1? Rect.area(blocks[i==k-1? k-2: k-1]): 0;
+    }
+
+    // The max-min defect read off the two ends of the area-sorted blocks
+    int incrementalScore() {
+        int score = blocks.length<=1? problem.maxScore:
+                Rect.area(blocks[blocks.length-1]) - Rect.area(blocks[0]);
+
+        if (problem.checkScore && blocks.length > 0) {
+            int computed = computeScore();
+            if (score != computed)
+                throw new IllegalStateException(
+                        String.format("Incremental score %d != computed score %d for state %s", score, computed, this));
+        }
+        return score;
+    }
+
     int computeScore() {
-        if (blocks.size()==1) return maxScore;
+        if (blocks.length==1) return problem.maxScore;
 
-        int max = blocks.stream().map(Rect::getArea).max(Integer::compareTo).get();
-        int min = blocks.stream().map(Rect::getArea).min(Integer::compareTo).get();
+        int max = 0, min = Integer.MAX_VALUE;
+        for (int b: blocks) {
+            int area = Rect.area(b);
+            if (area > max) max = area;
+            if (area < min) min = area;
+        }
 
         score = max-min;
         return score;
@@ -121,65 +195,192 @@ public class State implements Comparable<State> {
 
     // There's no point of exploring a state that has the same
     // signature in terms of the multiset representation of the areas
-    // Return a string signature of the multiset so that we know
-    // what states to avoid exploring
-    String areaSignature() {
-        return areaSet.toString();
+    // Return a 64-bit hash of the multiset (sum of the per-area codes) so that we know
+    // what states to avoid exploring; equal hashes are confirmed with sameAreas()
+    long areaSignature() {
+        return signature;
+    }
+
+    // Whether the multisets of block areas of the two states are equal
+    boolean sameAreas(State that) {
+        int k = blocks.length;
+        if (k != that.blocks.length)
+            return false;
+
+        for (int i = 0; i < k; i++) { // both are sorted by area
+            if (Rect.area(blocks[i]) != Rect.area(that.blocks[i]))
+                return false;
+        }
+        return true;
+    }
+
+    // The packed rect p mapped by the gth of the 8 symmetries of the n x n square
+    // (bit 2: transpose, then bit 0: mirror the columns, bit 1: mirror the rows)
+    static int transform(int p, int g, int n) {
+        int x = p>>>24, y = (p>>>16) & 0xff, w = (p>>>8) & 0xff, h = p & 0xff;
+        if ((g & 4) != 0) {
+            int t = x; x = y; y = t;
+            t = w; w = h; h = t;
+        }
+        if ((g & 1) != 0)
+            y = n - y - w;
+        if ((g & 2) != 0)
+            x = n - x - h;
+        return x<<24 | y<<16 | w<<8 | h;
+    }
+
+    static long mix(long z) { // SplitMix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Order-independent hash of the blocks under the gth symmetry
+    long layoutHash(int g) {
+        long h = 0;
+        for (int b: blocks)
+            h += mix(transform(b, g, problem.n));
+        return h;
+    }
+
+    // The symmetry under which the layout hashes to the least value
+    int canonicalSymmetry() {
+        int best = 0;
+        long min = layoutHash(0);
+        for (int g = 1; g < 8; g++) {
+            long h = layoutHash(g);
+            if (h < min) {
+                min = h;
+                best = g;
+            }
+        }
+        return best;
+    }
+
+    // A hash of the tiling that is the same for all its rotations and reflections;
+    // equal keys are confirmed with sameLayout()
+    long layoutKey() {
+        long min = layoutHash(0);
+        for (int g = 1; g < 8; g++)
+            min = Math.min(min, layoutHash(g));
+        return min;
+    }
+
+    int[] canonicalLayout() {
+        int g = canonicalSymmetry();
+        int[] layout = new int[blocks.length];
+        for (int i = 0; i < blocks.length; i++)
+            layout[i] = transform(blocks[i], g, problem.n);
+        Arrays.sort(layout);
+        return layout;
+    }
+
+    // Whether the two tilings are the same up to a rotation or a reflection
+    boolean sameLayout(State that) {
+        return blocks.length == that.blocks.length && Arrays.equals(canonicalLayout(), that.canonicalLayout());
     }
 
     void addConstraintViolationPenalty() { // add penalty if applicable
         if (isInfeasible())
-            score = maxScore;
+            score = problem.maxScore;
     }
 
-    boolean isInfeasible() {
-        for (Rect r: blocks) {
-            if (areaFreq.getFreq(r) > 1)
-                return true;
+    boolean isInfeasible() { // two congruent blocks
+        return conflicts > 0;
+    }
+
+    // #blocks among blocks[0..len) whose shape id is the given one
+    int countShape(int[] blocks, int len, int shape) {
+        int c = 0;
+        for (int i = 0; i < len; i++) {
+            if (problem.shapeId(blocks[i]) == shape)
+                c++;
         }
-        return false;
+        return c;
     }
 
-    void addBlock(Rect r) { // warning: calling function needs to ensure that the block is unique
-        blocks.add(r);
-        areaFreq.update(r, 1);
+    // Pairwise recount of what conflicts keeps track of
+    int computeConflicts() {
+        int c = 0;
+        for (int i = 0; i < blocks.length; i++) {
+            if (countShape(blocks, i, problem.shapeId(blocks[i])) > 0)
+                c++;
+        }
+        return c;
     }
 
-    void removeBlock(Rect r) {
-        this.blocks.remove(r);
-        areaFreq.update(r, -1);
+    void checkConflicts() {
+        if (problem.checkScore && conflicts != computeConflicts())
+            throw new IllegalStateException(
+                    String.format("Incremental conflicts %d != computed conflicts %d for state %s",
+                            conflicts, computeConflicts(), this));
     }
 
-    String toSVG(int SCALE_FACTOR) {
-        return toSVG(SCALE_FACTOR, false);
+    // Whether the blocks other than the ith one contain two congruent ones
+    boolean conflictsExcept(int i) {
+        return conflicts > 1 || conflicts == 1 && countShape(blocks, blocks.length, problem.shapeId(blocks[i])) == 1;
     }
 
-    String toSVG(int SCALE_FACTOR, boolean color) {
-        StringBuffer buff = new StringBuffer();
-        buff.append(String.format("<svg width=\"%d\" height=\"%d\">\n", n*SCALE_FACTOR, n*SCALE_FACTOR));
+    // Count of blocks per shape id, with the ith block (if any) left out
+    int[] shapeCountsExcept(int i) {
+        int[] counts = new int[problem.numShapes];
+        for (int j = 0; j < blocks.length; j++) {
+            if (j != i)
+                counts[problem.shapeId(blocks[j])]++;
+        }
+        return counts;
+    }
 
-        for (Rect r : blocks)
-            buff.append(
-                color && r.x>0 || r.y>0? r.toSVGColor(SCALE_FACTOR, 5, "black"):
-                        r.toSVG(SCALE_FACTOR, 3, "black")
-                ).append("\n");
+    // Shapes (by id) of the blocks other than the ith one, or null if two of them are congruent
+    boolean[] shapesExcept(int i) {
+        if (conflictsExcept(i))
+            return null;
 
-        List<Rect> grid = new ArrayList<>(n*n);
-        for (int i=0; i<n; i++) {
-            for (int j=0; j<n; j++) {
-                grid.add(new Rect(i, j, 1, 1));
-            }
+        boolean[] shapes = new boolean[problem.numShapes];
+        for (int j = 0; j < blocks.length; j++) {
+            if (j != i)
+                shapes[problem.shapeId(blocks[j])] = true;
         }
-        for (Rect r: grid)
-            buff.append(r.toSVG(SCALE_FACTOR, 1, "black")).append("\n");
+        return shapes;
+    }
+
+    void addBlock(Rect r) { // warning: calling function needs to ensure that the block is unique
+        if (countShape(blocks, blocks.length, problem.shapeId(r.w, r.h)) > 0)
+            conflicts++;
+        blocks = Arrays.copyOf(blocks, blocks.length+1);
+        insert(blocks, blocks.length-1, r.pack());
+        signature += problem.areaHashes[r.area];
+    }
+
+    void removeBlock(Rect r) {
+        int i = indexOf(r.pack());
+        if (i < 0)
+            return;
+        System.arraycopy(blocks, i+1, blocks, i, blocks.length-i-1);
+        blocks = Arrays.copyOf(blocks, blocks.length-1);
+        signature -= problem.areaHashes[r.area];
+        if (countShape(blocks, blocks.length, problem.shapeId(r.w, r.h)) > 0)
+            conflicts--;
+    }
+
+    String toSVG(int SCALE_FACTOR) {
+        return toSVG(SCALE_FACTOR, false, new SplittableRandom());
+    }
 
-        buff.append("</svg>");
+    String toSVG(int SCALE_FACTOR, boolean color, SplittableRandom rnd) { // rnd picks the colours
+        StringWriter buff = new StringWriter();
+        try {
+            new SVGWriter(buff).draw(this, SCALE_FACTOR, color, rnd);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex); // not thrown by a StringWriter
+        }
         return buff.toString();
     }
 
     public String toString() {
         List<Rect> sortedBlocks =
-            this.blocks.stream().sorted()
+            getBlocks().stream().sorted()
             .collect(Collectors.toList());
 
         StringBuilder buff = new StringBuilder();
@@ -219,11 +420,12 @@ public class State implements Comparable<State> {
     // Merge along right... to merge along other directions the input is transformed
     static List<State> mergeAllAlongRight(final State s, int i) {
         List<State> mergedStates = new LinkedList<>();
-        final Rect key = s.blocks.get(i);
+        final Rect key = s.getBlock(i);
 
-        List<Rect> adjRects = s.blocks
+        List<Rect> adjRects = s.getBlocks()
                 .stream()
                 .filter(p -> p.y==key.y+key.w)  // only those rectangles that 'touch' the key
+                .filter(p -> p.x < key.x+key.h && key.x < p.x+p.h)  // ... along a common edge
                 .collect(Collectors.toList())
                 ;
 
@@ -233,36 +435,84 @@ public class State implements Comparable<State> {
         return mergedStates;
     }
 
-    State rotate(boolean antiClockwise) {  // top===right, bottom===left
-        State s = new State(State.n, this.depth);
-        for (Rect r: this.blocks) {
-            if (antiClockwise)
-                s.blocks.add(r.getReflectedHorizontally().getRotated());
-            else
-                s.blocks.add(r.getRotated().getReflectedHorizontally());
+    // The index of the block covering each cell (row-major): an adjacency index from which the
+    // neighbours of a block along any of its sides are read off directly
+    int[] occupancy() {
+        int n = problem.n;
+        int[] grid = new int[n*n];
+        for (int i = 0; i < blocks.length; i++) {
+            int p = blocks[i];
+            int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            for (int r = x; r < x + h; r++)
+                Arrays.fill(grid, r*n + y, r*n + y + w, i);
         }
+        return grid;
+    }
+
+    // The merges of every block with each of its neighbours to the right and below, which covers
+    // every adjacent pair once, without rotating or reflecting the state (cf. mergeAll)
+    List<State> mergeAdjacent() {
+        int n = problem.n;
+        int[] grid = occupancy();
+        List<State> mergedStates = new ArrayList<>();
+
+        for (int i = 0; i < blocks.length; i++) {
+            int p = blocks[i];
+            int x = p >>> 24, y = (p >>> 16) & 0xff, w = (p >>> 8) & 0xff, h = p & 0xff;
+            if (y + w < n) {    // the blocks along the right side, top to bottom
+                for (int r = x, last = -1; r < x + h; r++) {
+                    int j = grid[r*n + y + w];
+                    if (j != last)
+                        mergedStates.add(mergeAlongRight(this, getBlock(i), getBlock(j)));
+                    last = j;
+                }
+            }
+            if (x + h < n) {    // the blocks along the bottom, left to right
+                for (int c = y, last = -1; c < y + w; c++) {
+                    int j = grid[(x + h)*n + c];
+                    if (j != last)
+                        mergedStates.add(mergeAlongBottom(this, getBlock(i), getBlock(j)));
+                    last = j;
+                }
+            }
+        }
+        return mergedStates;
+    }
+
+    // The transforms map each packed block arithmetically, in O(1) per block. Bitboard's transforms
+    // work on cells (O(n) words per block) and lose the blocks, so they only cross-check these.
+    State rotate(boolean antiClockwise) {  // top===right, bottom===left
+        int g = antiClockwise? 6: 5;    // reflect then transpose, or transpose then reflect
+        State s = new State(problem, this.depth);
+        s.blocks = new int[blocks.length];
+        for (int i = 0; i < blocks.length; i++)
+            s.blocks[i] = transform(blocks[i], g, problem.n);
 
-        s.areaFreq = this.areaFreq;
         s.score = this.score;
-        s.areaSet = this.areaSet;
+        s.signature = this.signature;
+        s.conflicts = this.conflicts;
+        if (problem.checkTiling)
+            Bitboard.checkRotation(this, s, antiClockwise);
         return s;
     }
 
     State reflectHorizontally() {
-        State s = new State(State.n, this.depth);
-        for (Rect r: this.blocks) {
-            s.blocks.add(r.getReflectedHorizontally());
-        }
+        State s = new State(problem, this.depth);
+        s.blocks = new int[blocks.length];
+        for (int i = 0; i < blocks.length; i++)
+            s.blocks[i] = transform(blocks[i], 1, problem.n);
 
-        s.areaFreq = this.areaFreq;
         s.score = this.score;
-        s.areaSet = this.areaSet;
+        s.signature = this.signature;
+        s.conflicts = this.conflicts;
+        if (problem.checkTiling)
+            Bitboard.checkReflection(this, s);
         return s;
     }
 
     static State mergeAlongRight(State s, Rect key, Rect q) {
         int d;
-        List<Rect> mergedRects = new ArrayList<>(s.blocks); // copy the existing rectangles
+        List<Rect> mergedRects = s.getBlocks(); // copy the existing rectangles
 
         mergedRects.remove(q);
         mergedRects.remove(key);
@@ -282,7 +532,8 @@ public class State implements Comparable<State> {
         }
         else if (d <= 0) {
             q_top = new Rect(q.x, q.y, q.w, newRect_x_start-q.x);
-            mergedRects.add(q_top);
+            if (q_top.isValid())  // empty if the top edges are aligned
+                mergedRects.add(q_top);
         }
 
         d = newRect_x_end - (q.x+q.h);
@@ -292,31 +543,43 @@ public class State implements Comparable<State> {
         }
         else if (d >= 0) {
             key_bottom = new Rect(newRect_x_end, key.y, key.w, key.x+key.h-newRect_x_end);
-            mergedRects.add(key_bottom);
+            if (key_bottom.isValid())  // empty if the bottom edges are aligned
+                mergedRects.add(key_bottom);
         }
 
         State newState = new State(s, mergedRects);
         return newState;
     }
 
-    public static void toSVG(State bestState, boolean color) throws IOException {
-        final int MAX = 600;
-        String outFile = String.format("solutions/mondrian-%d-%d.htm", n, n);
+    // As mergeAlongRight with q below key
+    static State mergeAlongBottom(State s, Rect key, Rect q) {
+        List<Rect> mergedRects = s.getBlocks();
+        mergedRects.remove(q);
+        mergedRects.remove(key);
 
-        FileWriter fw = new FileWriter(outFile);
-        BufferedWriter bw = new BufferedWriter(fw);
+        int start = max(q.y, key.y), end = min(q.y+q.w, key.y+key.w);
+        mergedRects.add(new Rect(key.x, start, end - start, key.h + q.h));
 
-        List<Rect> sortedRects = bestState.blocks.stream().sorted(Rect::compareTo).collect(Collectors.toList());
+        if (key.y < start)
+            mergedRects.add(new Rect(key.x, key.y, start - key.y, key.h));
+        else if (q.y < start)
+            mergedRects.add(new Rect(q.x, q.y, start - q.y, q.h));
 
-        bw.write("<!DOCTYPE html>\n<html>\n<body>\n");
-        bw.write(String.format("<div>%dx%d solution: Score = %d (%s), #Rectangles = %d</div>",
-                bestState.n, bestState.n, bestState.score, sortedRects, bestState.blocks.size()));
-        bw.write("<br><br>");
+        if (key.y+key.w > end)
+            mergedRects.add(new Rect(key.x, end, key.y+key.w - end, key.h));
+        else if (q.y+q.w > end)
+            mergedRects.add(new Rect(q.x, end, q.y+q.w - end, q.h));
 
-        bw.write(bestState.toSVG(MAX/n, color));
-        bw.write("</body>\n</html>");
-        bw.close();
-        fw.close();
+        return new State(s, mergedRects);
+    }
+
+    public static void toSVG(State bestState, boolean color) throws IOException {
+        toSVG(bestState, color, new SplittableRandom());
+    }
+
+    public static void toSVG(State bestState, boolean color, SplittableRandom rnd) throws IOException {
+        int n = bestState.problem.n;
+        SVGWriter.write(bestState, SVGWriter.solutionFile(n, ""), color, rnd);
     }
 
     public static void main(String[] args) throws IOException {
@@ -328,24 +591,25 @@ public class State implements Comparable<State> {
         bw = new BufferedWriter(fw);
         bw.write("<!DOCTYPE html>\n<html>\n<body>\n");
 
-        State s = new State(7, 0);
+        int n = 7;
+        State s = new State(n, 0);
         int p = 2;
 
-        s.blocks.add(new Rect(0, 0, 6, 2));
-        s.blocks.add(new Rect(2, 0, 4, 2));
-        s.blocks.add(new Rect(4, 0, 4, 1));
-        s.blocks.add(new Rect(5, 0, 4, 2));
-        s.blocks.add(new Rect(2, 4, 2, 5));
-        s.blocks.add(new Rect(0, 6, 1, 3));
-        s.blocks.add(new Rect(3, 6, 1, 1));
-        s.blocks.add(new Rect(4, 6, 1, 3));
+        s.addBlock(new Rect(0, 0, 6, 2));
+        s.addBlock(new Rect(2, 0, 4, 2));
+        s.addBlock(new Rect(4, 0, 4, 1));
+        s.addBlock(new Rect(5, 0, 4, 2));
+        s.addBlock(new Rect(2, 4, 2, 5));
+        s.addBlock(new Rect(0, 6, 1, 3));
+        s.addBlock(new Rect(3, 6, 1, 1));
+        s.addBlock(new Rect(4, 6, 1, 3));
 
         s.computeScore();
         System.out.println(s);
-        bw.write(String.format("<svg width=\"%d\" height=\"%d\">\n", State.n*SCALE_FACTOR, State.n*SCALE_FACTOR));
+        bw.write(String.format("<svg width=\"%d\" height=\"%d\">\n", n*SCALE_FACTOR, n*SCALE_FACTOR));
 
         State s_ref = s.reflectHorizontally();
-        for (Rect x: s.blocks) {
+        for (Rect x: s.getBlocks()) {
             bw.write(x.toSVG(SCALE_FACTOR, 1, "black"));
             bw.newLine();
         }
@@ -365,9 +629,9 @@ public class State implements Comparable<State> {
             bw = new BufferedWriter(fw);
 
             bw.write("<!DOCTYPE html>\n<html>\n<body>\n");
-            bw.write(String.format("<svg width=\"%d\" height=\"%d\">\n", State.n * SCALE_FACTOR, State.n * SCALE_FACTOR));
+            bw.write(String.format("<svg width=\"%d\" height=\"%d\">\n", n * SCALE_FACTOR, n * SCALE_FACTOR));
 
-            for (Rect x : merged.blocks) {
+            for (Rect x : merged.getBlocks()) {
                 bw.write(x.toSVG(SCALE_FACTOR, 1, "black"));
                 bw.newLine();
             }
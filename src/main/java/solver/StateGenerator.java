@@ -1,25 +1,24 @@
 package solver;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class StateGenerator {
     static final int N = 32;
     static final int K = 10;
 
-    static State genNextStatesByBisection(State x, boolean mode) {
+    static State genNextStatesByBisection(State x, boolean mode, SplittableRandom rnd) {
         State next = null;
 
-        if (x.blocks.isEmpty()) {
-            x.blocks.add(new Rect(0, 0, State.n, State.n));
-            x.areaSet.add(State.maxScore);
-        }
+        if (x.numBlocks()==0)
+            x.addBlock(new Rect(0, 0, x.problem.n, x.problem.n));
 
         // Generate next states
-        Rect r = x.blocks.get((int)(Math.random() * x.blocks.size()));
+        Rect r = x.getBlock(rnd.nextInt(x.numBlocks()));
         if (r.w <= 2 || r.h <= 2)
             return null;
 
-        int cut = mode ? r.y + r.w/2 : r.x + r.h/2;
+        int cut = mode ? r.w/2 : r.h/2;
         List<Rect> subRects = r.biSectionSplit(mode, cut);
         if (subRects != null) {
             next = new State(x, r, subRects);
@@ -31,18 +30,19 @@ public class StateGenerator {
         State s = new State(N, 0);
         State next = null;
         boolean mode;
+        SplittableRandom rnd = new SplittableRandom();
 
         for (int k=0; k<K; k++) {
             //System.out.println(s);
-            mode = Math.random() > 0.5;
-            next = genNextStatesByBisection(s, mode);
+            mode = rnd.nextBoolean();
+            next = genNextStatesByBisection(s, mode, rnd);
             if (next==null) continue;
             s = next;
         }
 
         if (next != null) {
             //System.out.println(next);
-            for (Rect r: next.blocks) {
+            for (Rect r: next.getBlocks()) {
                 System.out.println(String.format("(%d,%d) %dx%d", r.x, r.y, r.w, r.h));
             }
         }
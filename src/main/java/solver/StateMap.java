@@ -0,0 +1,151 @@
+package solver;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Open-addressing (linear probing) table of states keyed on their 64-bit area signatures.
+// Two states are taken to be equivalent only if their signatures match *and* their area
+// multisets are equal, so signature collisions never merge distinct states. Subclasses
+// may use another notion of equivalence by overriding key() and equivalent().
+public class StateMap {
+    static final float LOAD_FACTOR = 0.5f;
+
+    long[] keys;
+    State[] values;
+    int size;
+    int mask;
+
+    StateMap() {
+        this(16);
+    }
+
+    StateMap(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, (int)(capacity/LOAD_FACTOR)) - 1) << 1;
+        keys = new long[cap];
+        values = new State[cap];
+        mask = cap - 1;
+    }
+
+    static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;  // spread the bits (Fibonacci hashing)
+        return (int)(h ^ (h >>> 32)) & mask;
+    }
+
+    long key(State x) { return x.areaSignature(); }
+
+    boolean equivalent(State a, State b) { return a.sameAreas(b); }
+
+    int size() { return size; }
+
+    boolean isEmpty() { return size==0; }
+
+    // Returns the slot holding a state equivalent to x, or -1 if there's none
+    int find(State x) {
+        long key = key(x);
+        for (int i = slot(key, mask); values[i] != null; i = (i+1) & mask) {
+            if (keys[i]==key && equivalent(values[i], x))
+                return i;
+        }
+        return -1;
+    }
+
+    State get(State x) {
+        int i = find(x);
+        return i < 0? null: values[i];
+    }
+
+    // Store x unless an equivalent state is already present (which is returned instead)
+    State putIfAbsent(State x) {
+        long key = key(x);
+        int i;
+        for (i = slot(key, mask); values[i] != null; i = (i+1) & mask) {
+            if (keys[i]==key && equivalent(values[i], x))
+                return values[i];
+        }
+        keys[i] = key;
+        values[i] = x;
+        if (++size > LOAD_FACTOR * values.length)
+            resize();
+        return null;
+    }
+
+    // Remove the state equivalent to x (if any) and return it
+    State remove(State x) {
+        int i = find(x);
+        if (i < 0)
+            return null;
+
+        State removed = values[i];
+        // backward-shift deletion: move up the entries of the probe chain that would
+        // otherwise become unreachable because of the hole at i
+        int j = i;
+        while (true) {
+            j = (j+1) & mask;
+            if (values[j] == null)
+                break;
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = null;
+        size--;
+        return removed;
+    }
+
+    void resize() {
+        long[] oldKeys = keys;
+        State[] oldValues = values;
+
+        keys = new long[oldKeys.length << 1];
+        values = new State[oldValues.length << 1];
+        mask = keys.length - 1;
+
+        for (int k = 0; k < oldValues.length; k++) {
+            if (oldValues[k] == null)
+                continue;
+            int i = slot(oldKeys[k], mask);
+            while (values[i] != null)
+                i = (i+1) & mask;
+            keys[i] = oldKeys[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    // A read-only live view of the stored states
+    Collection<State> values() {
+        return new AbstractCollection<State>() {
+            @Override
+            public Iterator<State> iterator() {
+                return new Iterator<State>() {
+                    int next = advance(0);
+
+                    int advance(int i) {
+                        while (i < values.length && values[i] == null)
+                            i++;
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() { return next < values.length; }
+
+                    @Override
+                    public State next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        State s = values[next];
+                        next = advance(next+1);
+                        return s;
+                    }
+                };
+            }
+
+            @Override
+            public int size() { return size; }
+        };
+    }
+}
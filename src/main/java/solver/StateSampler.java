@@ -0,0 +1,177 @@
+package solver;
+
+import java.util.PriorityQueue;
+
+// Keeps the queued states in a dense slot array along with a Fenwick tree over their
+// weights, so that a state can be drawn either uniformly or in proportion to its
+// goodness (maxScore - score) in O(log n) without allocating.
+//
+// For biased sampling it can also keep a window of the best states in order, so that they
+// needn't be searched for on every draw: the other states wait in a best-first heap, from which
+// the states removed meanwhile are dropped lazily (as in QueueBudget), to refill the window
+// in O(log n) when one of its states leaves.
+public class StateSampler {
+    State[] slots;
+    int[] weights;  // weight of the state in each slot
+    long[] tree;    // Fenwick tree (1-based) of slot weights
+    int size;
+    long total;
+
+    State[] top;    // the best states in order (null if no window is kept)
+    int numTop;
+    PriorityQueue<State> rest;  // the queued states outside the window, best first
+
+    StateSampler() {
+        this(16, 0);
+    }
+
+    StateSampler(int capacity, int window) {
+        capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new State[capacity];
+        weights = new int[capacity];
+        tree = new long[capacity + 1];
+        if (window > 0) {
+            top = new State[window];
+            rest = new PriorityQueue<>();
+        }
+    }
+
+    static int weight(State x) {
+        return x.problem.maxScore - x.getScore(); // convert min to max
+    }
+
+    int size() { return size; }
+
+    void add(State x) {
+        if (size == slots.length)
+            grow();
+
+        int w = weight(x);
+        slots[size] = x;
+        weights[size] = w;
+        x.slot = size;
+        adjust(size, w);
+        size++;
+        if (top != null)
+            addTop(x);
+    }
+
+    void remove(State x) {
+        int i = x.slot;
+        if (i < 0 || i >= size || slots[i] != x)
+            return;
+
+        // move the last state into the freed slot
+        int last = --size;
+        State moved = slots[last];
+        adjust(i, weights[last] - weights[i]);
+        adjust(last, -weights[last]);
+
+        slots[i] = moved;
+        weights[i] = weights[last];
+        moved.slot = i;
+
+        slots[last] = null;
+        weights[last] = 0;
+        x.slot = -1;
+        if (top != null)
+            removeTop(x);
+    }
+
+    // Every state outside the window is no better than those in it
+    void addTop(State x) {
+        if (numTop == top.length) {
+            if (x.compareTo(top[numTop-1]) >= 0) {
+                rest.add(x);
+                return;
+            }
+            rest.add(top[numTop-1]);  // makes room for x
+        }
+        else
+            numTop++;
+
+        int j = numTop-1;
+        for (; j > 0 && x.compareTo(top[j-1]) < 0; j--)
+            top[j] = top[j-1];
+        top[j] = x;
+    }
+
+    void removeTop(State x) {
+        int i = 0;
+        if (numTop > 0 && x.compareTo(top[numTop-1]) <= 0) {
+            while (i < numTop && top[i] != x)
+                i++;
+        }
+        else
+            i = numTop;
+
+        if (i == numTop) {  // in the heap, where it's dropped lazily
+            if (rest.size() > 2*size + 1024) { // mostly stale by now
+                rest.clear();
+                numTop = 0;
+                for (int k = 0; k < size; k++)
+                    addTop(slots[k]);
+            }
+            return;
+        }
+
+        System.arraycopy(top, i+1, top, i, numTop-i-1);
+        top[--numTop] = null;
+        State next = rest.poll();
+        while (next != null && next.slot < 0)
+            next = rest.poll();
+        if (next != null)
+            top[numTop++] = next;
+    }
+
+    State sampleUniform(double r) { // r is in [0, 1)
+        if (size == 0)
+            return null;
+        return slots[(int)(r * size)];
+    }
+
+    State sampleWeighted(double r) { // r is in [0, 1)
+        if (size == 0)
+            return null;
+        if (total <= 0)
+            return sampleUniform(r);
+
+        // descend the tree for the first slot whose cumulative weight exceeds the target
+        long target = (long)(r * total);
+        int pos = 0;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= slots.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return slots[Math.min(pos, size-1)];
+    }
+
+    void adjust(int i, long delta) {
+        total += delta;
+        for (int k = i+1; k <= slots.length; k += k & -k)
+            tree[k] += delta;
+    }
+
+    void grow() {
+        int capacity = slots.length << 1;
+        State[] oldSlots = slots;
+        int[] oldWeights = weights;
+
+        slots = new State[capacity];
+        weights = new int[capacity];
+        tree = new long[capacity + 1];
+        System.arraycopy(oldSlots, 0, slots, 0, size);
+        System.arraycopy(oldWeights, 0, weights, 0, size);
+
+        // linear-time Fenwick construction
+        for (int k = 1; k <= capacity; k++) {
+            tree[k] += k <= size? weights[k-1]: 0;
+            int parent = k + (k & -k);
+            if (parent <= capacity)
+                tree[parent] += tree[k];
+        }
+    }
+}
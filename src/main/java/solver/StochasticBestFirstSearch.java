@@ -1,258 +1,796 @@
 package solver;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.*;
 
 public class StochasticBestFirstSearch {
     State root;
     State bestState;
     int bestScore;
+    Problem problem;
     int maxScore;
-    static int maxDepth;
+    int maxDepth;
     int numVisited;
 
     boolean uniformSampling;
+    boolean weightedSampling;   // in proportion to the score over the whole queue
     boolean spiralSplit;
+    boolean feasibleOnly;       // skip moves that would make a state infeasible
+    boolean spiralParallel;     // enumerate the spiral splits in parallel
     boolean toMerge;
     int mergeMinDepth;
     int spiralMaxDepth;
+    int numThreads;
+    Set<State> inFlight = Collections.newSetFromMap(new IdentityHashMap<>()); // being expanded by workers (parallel mode)
+    boolean stopped;
 
-    static final boolean DEBUG = true;
     static final float EPSILON = 0.1f; // prob. of including an infeasible state in the beam search
 
     int beamSize;
-    static int MAX_QUEUE;
-    static int MAX_NUMVISITED;
-    Map<String, State> stateQueue;
+    int maxQueueSize;
+    int maxNumVisited;
+    StateMap stateQueue;
+    StateSampler sampler;   // indexes the states of stateQueue for sampling
+    TranspositionTable expanded;    // layouts expanded so far (null if transpositions are off)
+    int[] topScores;        // scratch space for biased sampling
+    SearchListener listener;    // null if none is attached
+    long seed;
+
+    Incumbent shared;           // the best state across the islands of a portfolio (null if none)
+    int island;                 // the no. of this search among the islands
+    int migrationInterval;      // #visits between exchanges of the best states with the other islands
+    int lastMigration;
+    SplittableRandom random;    // the stream of the sequential search (workers split their own off it)
+    QueueBudget budget;         // null if the search stops once the queue is full (instead of evicting)
+    Checkpoint checkpoint;      // null if checkpointing is off
+    LNSOptimizer lns;           // refines the best state at the end (null if off)
+    List<MoveGenerator> generators = new ArrayList<>();    // bisection, then spiral and merge if on
+    GeneratorBandit bandit;     // picks the generators of each expansion (null if they're picked by depth)
+    boolean resumed;            // the queue has been restored from a checkpoint
+
+    long timeBudgetNanos;       // stop after this much wall-clock time (0 for no limit)
+    int targetScore;            // stop once a state scoring this or lower is found (-1 for none)
+    int lowerBound;             // no tiling scores lower than this
+    boolean pruning;            // drop the states that can't lead to a better one than the best so far
+    long startTime;             // System.nanoTime() at the start of epoch()
+    long bestTime;              // nanos since startTime at which bestState was found
 
     StochasticBestFirstSearch(int n, Properties prop) {
 
-        int maxDepth = Integer.parseInt(prop.getProperty("maxdepth", "10"));
-        MAX_QUEUE = Integer.parseInt(prop.getProperty("maxqueue_size", "1000"));
-        MAX_NUMVISITED = Integer.parseInt(prop.getProperty("maxstates_to_explore", "1000"));
+        maxDepth = Integer.parseInt(prop.getProperty("maxdepth", "10"));
+        maxQueueSize = Integer.parseInt(prop.getProperty("maxqueue_size", "1000"));
+        maxNumVisited = Integer.parseInt(prop.getProperty("maxstates_to_explore", "1000"));
         beamSize = Integer.parseInt(prop.getProperty("beamsize", "20"));
         uniformSampling = prop.getProperty("sampling", "biased").equals("uniform");
+        weightedSampling = prop.getProperty("sampling", "biased").equals("weighted");
 
-        root = new State(n, 0); // root is at depth 0
+        problem = new Problem(n, Boolean.parseBoolean(prop.getProperty("check.score", "false")),
+                Boolean.parseBoolean(prop.getProperty("check.tiling", "false")));
+        root = new State(problem, 0); // root is at depth 0
         maxScore = n*n;
         bestScore = maxScore;
-        stateQueue = new HashMap<>();
-        StochasticBestFirstSearch.maxDepth = maxDepth;
+        stateQueue = new StateMap();
+        sampler = new StateSampler(16, uniformSampling || weightedSampling? 0: beamSize);
+        topScores = new int[beamSize];
 
         numVisited = 0;
         spiralSplit = Boolean.parseBoolean(prop.getProperty("gen.spiral", "false"));
         toMerge = Boolean.parseBoolean(prop.getProperty("gen.merge", "false"));
         mergeMinDepth = Integer.parseInt(prop.getProperty("merge.mindepth", "4"));
         spiralMaxDepth = Integer.parseInt(prop.getProperty("spiral.maxdepth", "2"));
+        feasibleOnly = Boolean.parseBoolean(prop.getProperty("gen.feasible_only", "false"));
+        spiralParallel = Boolean.parseBoolean(prop.getProperty("spiral.parallel", "false"));
+        numThreads = Integer.parseInt(prop.getProperty("threads", "1"));
+        listener = SearchListener.create(prop.getProperty("listeners", "progress,metrics"));
+        if (prop.getProperty("queue.policy", "stop").equals("evict"))
+            budget = new QueueBudget(maxQueueSize,
+                    (long)(Double.parseDouble(prop.getProperty("maxqueue_mb", "0")) * (1 << 20)));
+        migrationInterval = Integer.parseInt(prop.getProperty("migration.interval", "500"));
+        seed = prop.containsKey("seed")? Long.parseLong(prop.getProperty("seed")): new SplittableRandom().nextLong();
+        random = new SplittableRandom(seed);
+        if (Boolean.parseBoolean(prop.getProperty("transpositions", "true"))) {
+            if (budget == null)
+                expanded = new TranspositionTable();
+            else {
+                // aged so that its two generations take up at most half the byte budget
+                expanded = new TranspositionTable(maxQueueSize, budget.maxBytes/4);
+                budget.table = expanded;
+            }
+        }
+
+        timeBudgetNanos = Long.parseLong(prop.getProperty("time_budget_ms", "0")) * 1_000_000;
+        String target = prop.getProperty("target_score", "-1");
+        targetScore = target.equals("optimal")? KnownOptima.defect(n): Integer.parseInt(target);
+        if (target.equals("optimal") && targetScore < 0)
+            System.err.println("No known optimal score for n=" + n);
+        lowerBound = problem.lowerBound();
+        pruning = Boolean.parseBoolean(prop.getProperty("prune", "true"));
+
+        generators.add(new MoveGenerator(SearchListener.Phase.BISECTION, x -> true, this::genMovesByBisection));
+        if (spiralSplit)
+            generators.add(new MoveGenerator(SearchListener.Phase.SPIRAL,
+                    x -> x.depth < spiralMaxDepth, this::genMovesBySpiralEnclosure));
+        if (toMerge)
+            generators.add(new MoveGenerator(SearchListener.Phase.MERGE,
+                    x -> x.depth > mergeMinDepth, this::genMovesByMerging));
+        if (Boolean.parseBoolean(prop.getProperty("gen.adaptive", "false")))
+            bandit = new GeneratorBandit(generators, Double.parseDouble(prop.getProperty("gen.adaptive.min_share", "0.05")));
+
+        if (Integer.parseInt(prop.getProperty("lns.rounds", "0")) > 0)
+            lns = new LNSOptimizer(problem, prop);
+
+        String checkpointFile = prop.getProperty("checkpoint.file", "");
+        if (!checkpointFile.isEmpty())
+            checkpoint = new Checkpoint(Paths.get(checkpointFile),
+                    Long.parseLong(prop.getProperty("checkpoint.interval_ms", "60000")));
+
+        // tile the root with the full square upfront so that expanding it never mutates a shared state
+        root.addBlock(new Rect(0, 0, n, n));
 
         System.err.println("Parameters: " + prop);
+        System.err.println("Seed: " + seed);
     }
 
     // beam is an o/p parameter
     void genNextStatesByBisection(State x, List<State> beam) {
-        State next;
+        TopKMoves moves = new TopKMoves(Integer.MAX_VALUE);
+        genMovesByBisection(x, moves);
+        beam.addAll(moves.toStates(x));
+    }
+
+    List<State> genNextStatesBySpiralEnclosure(State x) {
+        TopKMoves moves = new TopKMoves(Integer.MAX_VALUE);
+        genMovesBySpiralEnclosure(x, moves);
+        return moves.toStates(x);
+    }
+
+    // moves is an o/p parameter
+    void genMovesByBisection(State x, TopKMoves moves) {
         boolean[] modes = {false, true};
 
-        if (x.blocks.isEmpty()) {
-            x.blocks.add(new Rect(0, 0, State.n, State.n));
-            x.areaSet.add(State.maxScore);
-        }
+        if (x.numBlocks()==0)
+            x.addBlock(new Rect(0, 0, problem.n, problem.n));
+
+        int[] shapeCounts = feasibleOnly? x.shapeCountsExcept(-1): null;
 
         // Generate next states
         for (boolean mode: modes) {
-            for (Rect r : x.blocks) {
-                int max = mode ? r.y + r.w : r.x + r.h;
-                max = max>>1;
+            for (int i = 0; i < x.numBlocks(); i++) {
+                int b = x.blocks[i];
+                int w = (b>>>8) & 0xff, h = b & 0xff;
+                int len = mode ? w : h;
+                int other = mode ? h : w;
+                int max = len>>1;
+                int parentShape = problem.shapeId(b);
+
+                if (feasibleOnly && x.conflictsExcept(i))
+                    continue; // no split of this block can resolve the conflict
 
                 // create a new state and recursively visit that node
                 // (if the depth is less than max-depth)
                 // new state should be created vertically (if the current one is horizontal)
                 for (int mid = 1; mid <= max; mid++) {
-                    List<Rect> subRects = r.biSectionSplit(mode, mid);
-                    if (subRects != null) {
-                        next = new State(x, r, subRects);
-                        beam.add(next);
+                    if (feasibleOnly) {
+                        int s1 = problem.shapeId(mid, other), s2 = problem.shapeId(len-mid, other);
+                        if (s1 == s2 || shapeCounts[s1] - (s1 == parentShape? 1: 0) > 0
+                                || shapeCounts[s2] - (s2 == parentShape? 1: 0) > 0)
+                            continue;
                     }
+
+                    int a1 = mid*other, a2 = (len-mid)*other;  // a1 <= a2
+                    moves.offer(x.scoreAfterReplacing(i, a1, a2),
+                            mode? TopKMoves.BISECT_V: TopKMoves.BISECT_H, i, mid, 0, 0, 0);
                 }
             }
         }
     }
 
-    // beam is an o/p parameter
-    List<State> genNextStatesBySpiralEnclosure(State x) {
-        State next;
-        List<State> subStates = new LinkedList<>();
-
+    // moves is an o/p parameter
+    void genMovesBySpiralEnclosure(State x, TopKMoves moves) {
         // Generate next states by spiral transformation for the rect with max area
-        Rect r = x.blocks.stream().max(Rect::compareTo).get();
+        int index = x.numBlocks()-1;  // blocks are sorted by area
+        Rect r = x.getBlock(index);
 
         int xmin = r.x + 1;
         int ymin = r.y+1;
         int xmax = r.x+r.h-1;
         int ymax = r.y+r.w-1;
+        if (xmin >= xmax || ymin >= ymax)
+            return; // too thin to enclose a pivot
+
+        // moves are numbered in the order of the (i, j, p, q) loops so that the rows
+        // of pivots can be enumerated independently (and in parallel) with the same result
+        // (as longs, since the #moves grows as n^4 and would overflow an int for n > ~215)
+        long span = (long)(ymax-ymin) * (xmax-xmin) * (ymax-ymin);  // bound on the #pivots per row
+        long base = moves.seq;
+        boolean[] shapes = feasibleOnly? x.shapesExcept(index): null;
+        if (feasibleOnly && shapes == null)
+            return; // the other blocks are in conflict already
+
+        if (!spiralParallel) {
+            for (int i=xmin; i<xmax; i++)
+                genSpiralMoves(x, index, r, i, shapes, moves, base + (i-xmin)*span);
+        }
+        else {
+            List<TopKMoves> rows = IntStream.range(xmin, xmax).parallel()
+                    .mapToObj(i -> {
+                        TopKMoves row = new TopKMoves(moves.k);
+                        genSpiralMoves(x, index, r, i, shapes, row, base + (i-xmin)*span);
+                        return row;
+                    })
+                    .collect(Collectors.toList());
+            for (TopKMoves row: rows)
+                moves.join(row);
+        }
+        moves.seq = base + (xmax-xmin)*span;
+    }
 
-        for (int i=xmin; i<xmax; i++) {
-            for (int j=ymin; j<ymax; j++) {
-                for (int p=xmin+1; p<=xmax; p++) {
-                    for (int q=ymin+1; q<=ymax; q++) {
-
-                        List<Rect> subRects = r.spiralSplit(i, p, j, q);
-                        if (subRects == null)
-                            continue;
-                        next = new State(x, r, subRects);
+    // Offer the spiral splits of r (the index-th block of x) whose pivot has its top edge
+    // at row i. Only pivots that fit strictly inside r are enumerated and whole ranges of
+    // them are skipped as soon as one of the rects around the pivot (which stays fixed over
+    // the range) would either push the score beyond that of the worst move kept so far, or
+    // (if shapes is given) would be congruent to another block, making the state infeasible.
+    void genSpiralMoves(State x, int index, Rect r, int i, boolean[] shapes, TopKMoves moves, long order) {
+        int xmin = r.x + 1;
+        int ymin = r.y+1;
+        int xmax = r.x+r.h-1;
+        int ymax = r.y+r.w-1;
+        int restLo = x.minAreaExcept(index), restHi = x.maxAreaExcept(index);
+
+        // sizes of the pivot and the four rects around it (see RectQuadruple)
+        int dx = i - r.x;
+        int span = (xmax-xmin) * (ymax-ymin);   // bound on the #pivots per top-left corner
+
+        for (int j=ymin; j<ymax; j++, order += span) {
+            int dy = j - r.y;
+            int leftW = dy, leftH = r.h-dx;
+            int left = leftW*leftH;     // fixed for the row of the pivot's top-left corner
+            int lo1 = min(restLo, left), hi1 = max(restHi, left);
+            if (hi1 - lo1 >= moves.threshold() || shapes != null && shapes[problem.shapeId(leftW, leftH)])
+                continue;
 
-                        subStates.add(next);
-                    }
+            for (int p=i+1; p<=xmax; p++) {
+                int ih = p - i;
+                int bottomW = r.w-dy, bottomH = r.h-ih-dx;
+                int bottom = bottomW*bottomH;   // fixed for the pivot's top-left and bottom rows
+                int lo2 = min(lo1, bottom), hi2 = max(hi1, bottom);
+                if (hi2 - lo2 >= moves.threshold())
+                    continue;
+                if (shapes != null && (shapes[problem.shapeId(bottomW, bottomH)] || Rect.congruent(leftW, leftH, bottomW, bottomH)))
+                    continue;
+
+                for (int q=j+1; q<=ymax; q++) {
+                    int iw = q - j;
+                    int pivot = iw*ih;
+                    int top = (dy+iw)*dx;
+                    int right = (r.w-dy-iw)*(ih+dx);
+
+                    // the pivot and the top rect only grow with q -- so does this bound on the score
+                    int hi = max(hi2, max(pivot, top));
+                    if (hi - lo2 >= moves.threshold())
+                        break;
+                    int lo = min(lo2, min(min(pivot, top), right));
+                    if (hi - lo >= moves.threshold())
+                        continue;
+
+                    if (shapes != null && !feasibleSpiral(shapes, iw, ih, dy+iw, dx, r.w-dy-iw, ih+dx,
+                            leftW, leftH, bottomW, bottomH))
+                        continue;
+
+                    moves.offerAt(order + (p-i-1)*(ymax-ymin) + (q-j-1), max(hi, right) - lo,
+                            TopKMoves.SPIRAL, index, i, p, j, q, null);
                 }
+            }
+        }
+    }
+
+    // Whether the pivot, top and right rects are non-congruent to each other, to the left and
+    // bottom rects, and to the other blocks (in shapes); left and bottom are already checked
+    boolean feasibleSpiral(boolean[] shapes, int pw, int ph, int tw, int th, int rw, int rh,
+                                  int lw, int lh, int bw, int bh) {
+        if (shapes[problem.shapeId(pw, ph)] || shapes[problem.shapeId(tw, th)] || shapes[problem.shapeId(rw, rh)])
+            return false;
+        return !(Rect.congruent(pw, ph, tw, th) || Rect.congruent(pw, ph, rw, rh) || Rect.congruent(tw, th, rw, rh)
+                || Rect.congruent(pw, ph, lw, lh) || Rect.congruent(pw, ph, bw, bh)
+                || Rect.congruent(tw, th, lw, lh) || Rect.congruent(tw, th, bw, bh)
+                || Rect.congruent(rw, rh, lw, lh) || Rect.congruent(rw, rh, bw, bh));
+    }
 
+    // Expand a state into its best next states (at most beamSize of them).
+    // Candidates are ranked as move descriptors and only the selected ones become States.
+    // Doesn't modify any shared data, so that it can be called concurrently.
+    List<State> expand(State x) {
+        return expand(x, random);
+    }
+
+    List<State> expand(State x, SplittableRandom rnd) {
+        TopKMoves moves = new TopKMoves(beamSize);
+        int numGenerators = generators.size();
+        long[] starts = new long[numGenerators];    // the first sequence no. of each generator's moves
+        boolean[] run = bandit != null? bandit.choose(rnd): null;
+
+        for (int g = 0; g < numGenerators; g++) {
+            MoveGenerator gen = generators.get(g);
+            starts[g] = moves.seq;
+            if (run != null? !run[g]: !gen.applies.test(x))
+                continue;
+
+            int numOffered = moves.numOffered;
+            long nanos = gen.generate(x, moves, listener != null);
+            if (listener != null) {
+                listener.onPhase(gen.phase, nanos);
+                listener.onGenerated(x, gen.phase, moves.numOffered - numOffered);
             }
         }
 
-        return subStates;
+        // favour states where the areas are highly composite numbers -- not too useful... removed
+        long t = listener != null? System.nanoTime(): 0;
+        long[] seqs = moves.sortedSeqs();
+        List<State> topK = moves.toStates(x); // first K - the best states
+
+        int best = bestScore;
+        for (int i = 0; i < topK.size(); i++) {
+            int g = numGenerators - 1;
+            while (g > 0 && starts[g] > seqs[i])
+                g--;
+            generators.get(g).selected(x, topK.get(i), best);
+        }
+
+        if (listener != null) {
+            phaseDone(SearchListener.Phase.SELECT, t);
+            listener.onSelected(x, moves.numOffered, topK);
+        }
+        return topK;
+    }
+
+    // Offer the merges of every pair of adjacent blocks
+    void genMovesByMerging(State x, TopKMoves moves) {
+        for (State merged: x.mergeAdjacent()) {
+            if (!feasibleOnly || !merged.isInfeasible())
+                moves.offer(merged);
+        }
+    }
+
+    // Report the time since start for the phase and return the current time
+    long phaseDone(SearchListener.Phase phase, long start) {
+        long now = System.nanoTime();
+        listener.onPhase(phase, now - start);
+        return now;
+    }
+
+    // Offer the best state to the other islands and take in theirs if it's better: it's queued
+    // (to be expanded here too) and, as the best state, used for pruning
+    void migrate(SplittableRandom rnd) {
+        lastMigration = numVisited;
+        if (bestState != null)
+            shared.offer(bestState, island);
+
+        State global = shared.get();
+        if (global != null && (bestState == null || global.getScore() < bestScore)) {
+            State x = new State(problem, global.depth, global.blocks); // rebuilt on this island's tables
+            addState(x, rnd);
+            improve(x); // even if it wasn't queued (e.g. a queued state has the same areas)
+        }
+    }
+
+    // Queue the states read back from a checkpoint in place of the root
+    void resume(List<State> states) {
+        for (State x: states) {
+            enqueue(x); // as they were, i.e. infeasible ones too
+        }
+        resumed = true;
     }
 
     public State epoch() { // dfs up to a specified depth
-        State x, next;
-        boolean[] modes = {false, true};
-        List<State> beam = new ArrayList<>();
+        State x;
 
-        addState(root);
+        startTime = System.nanoTime();
+        if (!resumed)
+            addState(root, random);
 
-        while (stateQueue.size() <= MAX_QUEUE) {
-            numVisited++;
-            if (numVisited%10==0)
-                System.err.print(
-                    String.format("Visited %d states; #states remaining in queue: %d\r",
-                        numVisited, stateQueue.size()));
+        if (numThreads > 1)
+            parallelEpoch();
+        else {
+            while (budget != null || stateQueue.size() <= maxQueueSize) {
+                if (finishedEarly())
+                    break;
+                if (checkpoint != null)
+                    checkpoint.maybeSave(this, inFlight);
+                if (shared != null && numVisited - lastMigration >= migrationInterval)
+                    migrate(random);
+
+                numVisited++;
+                if (numVisited >= maxNumVisited)
+                    break;
+
+                long t = listener != null? System.nanoTime(): 0;
+                x = sample(random);
+                if (x==null)
+                    break; // no more states to sample from!
+
+                update(x);  // update bestState
+                if (listener != null) {
+                    listener.onSampled(x, numVisited, stateQueue.size());
+                    phaseDone(SearchListener.Phase.SAMPLE, t);
+                }
 
-            if (numVisited == MAX_NUMVISITED)
-                break;
+                if (tooDeep(x))
+                    continue; // depth too large... don't explore further
+                if (hopeless(x))
+                    continue; // can't improve on the best state any more
+                if (transposed(x))
+                    continue; // a symmetric copy of x has been expanded
 
-            x = sample(); // sample()
-            if (x==null)
-                break; // no more states to sample from!
+                List<State> topK = expand(x, random);
 
-            update(x);  // update bestState
-            if (x.depth==maxDepth) {
-                System.out.println("MAX-DEPTH exceeded: Skipping state " + x.toString());
-                continue; // depth too large... don't explore further
+                t = listener != null? System.nanoTime(): 0;
+                for (State s: topK) {
+                    addState(s, random); // add to state-queue
+                }
+                if (listener != null)
+                    phaseDone(SearchListener.Phase.INSERT, t);
             }
+        }
+
+        System.err.println(String.format("Updating through the remaining %d states in queue...", stateQueue.size()));
+        if (budget != null)
+            System.err.println(String.format("The queue takes up about %.1f MB and the transposition table %.1f MB (at most %.1f MB together)",
+                    budget.bytes/(double)(1 << 20), expanded == null? 0: expanded.bytes()/(double)(1 << 20),
+                    budget.maxBytesSeen/(double)(1 << 20)));
+
+        // See if any node in our queue contains a better score
+        for (State s: stateQueue.values())
+            improve(s);
+
+        if (lns != null && bestState != null)
+            improve(lns.optimize(bestState, random));
 
-            beam.clear();
+        if (listener != null || bandit != null)
+            MoveGenerator.report(generators, System.err);
+        if (bestState != null)
+            Bitboard.check(bestState);
 
-            genNextStatesByBisection(x, beam);
+        if (shared != null && bestState != null)
+            shared.offer(bestState, island);
 
-            if (spiralSplit && x.depth < spiralMaxDepth) {
-                System.out.println("Generating spiral transformation states...");
-                List<State> spiralTransformedStates = genNextStatesBySpiralEnclosure(x);
-                beam.addAll(spiralTransformedStates); // add more states
-                System.out.println("Added " + spiralTransformedStates.size() + " states as spiral transformation");
+        if (checkpoint != null) {
+            try {
+                checkpoint.close(this, inFlight);
             }
+            catch (IOException ex) {
+                System.err.println("Failed to write checkpoint " + checkpoint.file + ": " + ex);
+            }
+        }
 
-            // Generate all merged states
-            if (toMerge && x.depth > mergeMinDepth) {
-                System.out.println("Generating merged states...");
-                for (int i = 0; i < x.blocks.size(); i++) {
-                    List<State> mergedStates = State.mergeAll(x, i);
-                    beam.addAll(mergedStates);
+        if (listener != null)
+            listener.onFinished(bestState, numVisited, stateQueue.size());
+        return bestState;
+    }
+
+    // Each worker repeatedly claims a sampled state, expands it without holding the lock
+    // and then adds the selected children back to the queue. Access to the queue, the
+    // counters and the best state all go through the synchronized claim/release pair.
+    void parallelEpoch() {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        List<Callable<Void>> workers = new ArrayList<>(numThreads);
+
+        for (int i = 0; i < numThreads; i++) {
+            SplittableRandom rnd = random.split(); // an independent stream per worker
+            workers.add(() -> {
+                State x;
+                try {
+                    while ((x = claim(rnd)) != null) {
+                        List<State> topK = Collections.emptyList();
+                        try {
+                            if (!tooDeep(x) && !hopeless(x) && !transposed(x))
+                                topK = expand(x, rnd);
+                        }
+                        finally {
+                            release(x, topK, rnd);
+                        }
+                    }
                 }
-            }
+                catch (RuntimeException | Error ex) {
+                    abort();    // don't leave the other workers waiting in claim()
+                    throw ex;
+                }
+                return null;
+            });
+        }
 
-            System.out.println("Total states to select from: " + beam.size());
-            // favour states where the areas are highly composite numbers -- not too useful... removed
-            List<State> topK = beam.stream()
-                    //.sorted(new FactorsHeuristic())
-                    .sorted()
-                    .limit(beamSize)
-                    .collect(Collectors.toList()); // first K - the best states
-
-            if (DEBUG) {
-                List<Integer> scores = topK.stream()
-                        .map(State::getScore)
-                        .collect(Collectors.toList());
-                System.out.println("Selected scores of top states: " + scores);
+        try {
+            // a worker's failure (e.g. a check.score or check.tiling assertion) fails the search
+            for (Future<Void> done: pool.invokeAll(workers))
+                done.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    synchronized void abort() {
+        stopped = true;
+        notifyAll();
+    }
+
+    // Returns the next state to expand, or null if the search is over. A worker waits (instead of
+    // terminating) on an empty queue as long as other workers may still add states to it.
+    synchronized State claim(SplittableRandom rnd) {
+        while (!stopped) {
+            if (budget == null && stateQueue.size() > maxQueueSize || numVisited+1 >= maxNumVisited || finishedEarly())
+                break;
+            if (checkpoint != null)
+                checkpoint.maybeSave(this, inFlight);
+            if (shared != null && numVisited - lastMigration >= migrationInterval)
+                migrate(rnd);
+
+            long t = listener != null? System.nanoTime(): 0;
+            State x = sample(rnd);
+            if (x != null) {
+                numVisited++;
+                inFlight.add(x);
+                update(x);  // update bestState
+                if (listener != null) {
+                    listener.onSampled(x, numVisited, stateQueue.size());
+                    phaseDone(SearchListener.Phase.SAMPLE, t);
+                }
+                return x;
             }
+            if (inFlight.isEmpty())
+                break; // no more states to sample from!
 
-            System.out.println("Adding states to queue...");
-            for (State s: topK) {
-                addState(s); // add to state-queue
+            try {
+                wait();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
 
-        System.err.println(String.format("Updating through the remaining %d states in queue...", stateQueue.size()));
+        stopped = true;
+        notifyAll();
+        return null;
+    }
 
-        // See if any node in our queue contains a better score
-        for (State s: stateQueue.values()) {
-            if (s.isInfeasible())
-                continue;
-            int score = s.getScore();
-            if (score < bestScore) {
-                bestScore = score;
-                bestState = s;
-            }
+    synchronized void release(State x, List<State> topK, SplittableRandom rnd) {
+        long t = listener != null? System.nanoTime(): 0;
+        for (State s: topK) {
+            addState(s, rnd); // add to state-queue
         }
-        return bestState;
+        if (listener != null && !topK.isEmpty())
+            phaseDone(SearchListener.Phase.INSERT, t);
+        inFlight.remove(x);
+        notifyAll();
+    }
+
+    // A lower bound on the score of the states reachable from x. Merges may make the blocks
+    // larger, so with merges on only the bound that holds for all the tilings is used.
+    int lowerBound(State x) {
+        if (toMerge || x.numBlocks() == 0)
+            return lowerBound;
+        return max(lowerBound, problem.minDefect[Rect.area(x.blocks[0])]);
+    }
+
+    // Whether nothing reachable from x can beat the best state; if so x is evicted from the queue
+    // (as it could have been queued before the best state improved)
+    synchronized boolean hopeless(State x) {
+        if (!pruning || bestState == null || lowerBound(x) < bestScore)
+            return false;
+        dequeue(x);
+        if (listener != null)
+            listener.onPruned(x, true);
+        return true;
+    }
+
+    // Whether x is at the max depth; if so it's evicted from the queue (as an infeasible x isn't
+    // dequeued by update(), it would be drawn again and again otherwise)
+    synchronized boolean tooDeep(State x) {
+        if (x.depth < maxDepth)
+            return false;
+        dequeue(x);
+        if (listener != null)
+            listener.onMaxDepth(x);
+        return true;
     }
 
-    void addState(State x) {
+    // Records x as expanded; true if a rotation or reflection of its layout was expanded already,
+    // in which case x is evicted from the queue (an infeasible x isn't dequeued by update())
+    synchronized boolean transposed(State x) {
+        if (expanded == null)
+            return false;
+        State seen = expanded.putIfAbsent(x);
+        if (listener != null)
+            listener.onTransposition(x, seen);
+        if (seen == null)
+            return false;
+        dequeue(x);
+        return true;
+    }
+
+    void addState(State x, SplittableRandom rnd) {
         if (x.isInfeasible()) {
-            System.out.println(String.format("State [%s] is infeasible", x.toString()));
-            float p = (float)Math.random();
+            float p = (float)rnd.nextDouble();
+            if (listener != null)
+                listener.onInfeasible(x, p <= EPSILON);
             if (p > EPSILON)
                 return; // Prob. of not adding = 1-EPSILON
         }
 
-        String signature = x.areaSignature();
-        State seen = stateQueue.get(signature);
+        if (pruning && bestState != null && lowerBound(x) >= bestScore) {
+            if (listener != null)
+                listener.onPruned(x, false);
+            return; // can't lead to a better state than the best one
+        }
+
+        if (expanded != null) {
+            State copy = expanded.get(x);
+            if (listener != null)
+                listener.onTransposition(x, copy);
+            if (copy != null)
+                return; // the same layout up to symmetry has been expanded
+        }
+
+        if (budget != null && !makeRoom(x))
+            return; // no better than any of the states of a full queue
+
+        State seen = enqueue(x);
         if (seen != null) {
-            System.out.println(
-                String.format(
-                    "State [%s] not stored because it is equivalent to a stored state [%s]",
-                    x.toString(), seen.toString()));
+            if (listener != null)
+                listener.onDuplicate(x, seen);
             return; // have seen a similar state before!
         }
-        else {
-            stateQueue.put(signature, x);
+        if (listener != null)
+            listener.onAdded(x, stateQueue.size());
+        improve(x); // publish a new incumbent as soon as it's found
+    }
+
+    // Store x unless an equivalent state is queued already (which is returned instead)
+    State enqueue(State x) {
+        State seen = stateQueue.putIfAbsent(x);
+        if (seen == null) {
+            sampler.add(x);
+            if (budget != null)
+                budget.added(x);
+        }
+        return seen;
+    }
+
+    // Remove the queued state equivalent to x (if any) and return it
+    State dequeue(State x) {
+        State removed = stateQueue.remove(x);
+        if (removed != null) {
+            sampler.remove(removed);
+            if (budget != null)
+                budget.removed(removed);
+        }
+        return removed;
+    }
+
+    // Evict the worst queued states until x fits in the budget; false if x is no better than them
+    boolean makeRoom(State x) {
+        if (budget.fits(stateQueue.size(), x) || stateQueue.get(x) != null)
+            return true; // (a duplicate is reported as such when enqueued)
+
+        while (!budget.fits(stateQueue.size(), x)) {
+            State worst = budget.worst(sampler);
+            if (worst == null || x.compareTo(worst) >= 0) {
+                if (listener != null)
+                    listener.onDropped(x, false, budget.total());
+                return false;
+            }
+            dequeue(worst);
+            if (listener != null)
+                listener.onDropped(worst, true, budget.total());
         }
+        return true;
     }
 
     void update(State x) {
         if (x.isInfeasible())
             return;
 
-        System.out.println("Done visiting a feasible state " + x.toString());
-        System.out.println("State removed: " + stateQueue.remove(x.areaSignature()) + " #states = " + stateQueue.size());
+        State removed = dequeue(x);
+        if (listener != null)
+            listener.onVisited(x, removed, stateQueue.size());
 
-        // update the best state
-        int score = x.getScore();
-        if (score < bestScore || bestState==null) {
-            bestScore = score;
-            bestState = x;
+        if (bestState==null)
+            setBest(x);
+        else
+            improve(x);
+    }
+
+    // Make x the best state if it's feasible and better than the current one
+    void improve(State x) {
+        if (!x.isInfeasible() && x.getScore() < bestScore)
+            setBest(x);
+    }
+
+    void setBest(State x) {
+        bestScore = x.getScore();
+        bestState = x;
+        bestTime = System.nanoTime() - startTime;
+        if (listener != null)
+            listener.onImproved(x);
+    }
+
+    // The best k feasible states among the best state and those left in the queue (e.g. for a
+    // gallery), no two of which are the same tiling up to a rotation or a reflection
+    List<State> topStates(int k) {
+        List<State> states = new ArrayList<>();
+        if (bestState != null)
+            states.add(bestState);
+        for (State s: stateQueue.values()) {
+            if (!s.isInfeasible() && s != bestState)
+                states.add(s);
+        }
+        states.sort(Comparator.comparingInt(State::getScore));
+
+        List<State> top = new ArrayList<>(k);
+        Map<Long, List<State>> seen = new HashMap<>();
+        for (State s: states) {
+            if (top.size() == k)
+                break;
+            List<State> sameKey = seen.computeIfAbsent(s.layoutKey(), key -> new ArrayList<>(1));
+            if (sameKey.stream().anyMatch(s::sameLayout))
+                continue;
+            sameKey.add(s);
+            top.add(s);
+        }
+        return top;
+    }
+
+    // Whether the time budget is used up, or the target score (or the lower bound) has been reached
+    boolean finishedEarly() {
+        if (bestState != null && bestScore <= max(targetScore, lowerBound)) {
+            System.err.println(String.format("Stopping at score %d reached in %.3f s", bestScore, bestTime/1e9));
+            return true;
         }
+        if (timeBudgetNanos > 0 && System.nanoTime() - startTime >= timeBudgetNanos) {
+            System.err.println(String.format("Stopping as the time budget of %d ms is used up",
+                    timeBudgetNanos/1_000_000));
+            return true;
+        }
+        return false;
     }
 
-    State sample() { // proportional to the goodness score of the state
+    State sample(SplittableRandom rnd) { // proportional to the goodness score of the state
         if (stateQueue.isEmpty())
             return null;
 
-        if (uniformSampling) {
-            int size = stateQueue.size();
-            int rindex = (int)(Math.random()*size);
-            return this.stateQueue.values().stream().skip(rindex).findFirst().get();
-        }
+        if (uniformSampling)
+            return sampler.sampleUniform(rnd.nextDouble());
 
-        List<State> sortedStates = this.stateQueue.values().stream()
-                .sorted()
-                .limit(beamSize)
-                .collect(Collectors.toList());
+        if (weightedSampling)
+            return sampler.sampleWeighted(rnd.nextDouble());
 
-        // after sorting the values towards the beginning of the list are likely to be good solutions
-        int[] scores = new int[sortedStates.size()];
-        int i=0;
-        for (State s: sortedStates)
-            scores[i++] = State.maxScore - s.getScore(); // convert min to max
+        // the sampler keeps the beamSize best states of the queue in order
+        int k = sampler.numTop;
+        for (int i = 0; i < k; i++)
+            topScores[i] = maxScore - sampler.top[i].getScore(); // convert min to max
 
-        int sampled = Sampler.sample(scores);
-        return sortedStates.get(sampled);
+        // the values towards the beginning of the list are likely to be good solutions
+        int sampled = Sampler.sample(topScores, k, rnd);
+        return sampler.top[sampled];
     }
 }
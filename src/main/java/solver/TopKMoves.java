@@ -0,0 +1,207 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Keeps the K best candidate moves out of an expansion as primitive descriptors (the index
+// of the block being replaced, the kind of move and its cut/pivot coordinates) along with
+// the score that the resulting state would have. Only the survivors are turned into States.
+// Internally a max-heap on (score, sequence no.) so that the worst kept move is at the top;
+// among equal scores the earlier offered move wins, as with a stable sort.
+public class TopKMoves {
+    static final byte BISECT_H = 0;     // a = cut
+    static final byte BISECT_V = 1;     // a = cut
+    static final byte SPIRAL = 2;       // (a, b, c, d) = (xt, xb, yl, yr) of the pivot
+    static final byte PREBUILT = 3;     // an already constructed state
+
+    final int k;
+    int size;
+    int numOffered;
+    long seq;
+
+    int[] scores, parents, as, bs, cs, ds;
+    long[] seqs;
+    byte[] types;
+    State[] prebuilt;
+
+    TopKMoves(int k) {
+        this.k = k;
+        allocate(Math.min(k, 64));
+    }
+
+    void allocate(int capacity) {
+        scores = grow(scores, capacity);
+        seqs = grow(seqs, capacity);
+        parents = grow(parents, capacity);
+        as = grow(as, capacity);
+        bs = grow(bs, capacity);
+        cs = grow(cs, capacity);
+        ds = grow(ds, capacity);
+
+        byte[] t = new byte[capacity];
+        State[] p = new State[capacity];
+        if (types != null) {
+            System.arraycopy(types, 0, t, 0, size);
+            System.arraycopy(prebuilt, 0, p, 0, size);
+        }
+        types = t;
+        prebuilt = p;
+    }
+
+    static int[] grow(int[] a, int capacity) {
+        int[] b = new int[capacity];
+        if (a != null)
+            System.arraycopy(a, 0, b, 0, Math.min(a.length, capacity));
+        return b;
+    }
+
+    static long[] grow(long[] a, int capacity) {
+        long[] b = new long[capacity];
+        if (a != null)
+            System.arraycopy(a, 0, b, 0, Math.min(a.length, capacity));
+        return b;
+    }
+
+    int size() { return size; }
+
+    void offer(int score, byte type, int parent, int a, int b, int c, int d) {
+        offer(score, type, parent, a, b, c, d, null);
+    }
+
+    void offer(State s) {
+        offer(s.getScore(), PREBUILT, -1, 0, 0, 0, 0, s);
+    }
+
+    void offer(int score, byte type, int parent, int a, int b, int c, int d, State s) {
+        offerAt(seq++, score, type, parent, a, b, c, d, s);
+    }
+
+    // Offer a move with an explicit sequence no. (ties on the score go to the lower one)
+    void offerAt(long order, int score, byte type, int parent, int a, int b, int c, int d, State s) {
+        numOffered++;
+
+        if (size < k) {
+            if (size == scores.length)
+                allocate((int)Math.min((long)k, 2L*size));
+            siftUp(size++, score, order, type, parent, a, b, c, d, s);
+        }
+        else if (worse(scores[0], seqs[0], score, order)) { // better than the worst kept move which it replaces
+            siftDown(0, score, order, type, parent, a, b, c, d, s);
+        }
+    }
+
+    // Moves scoring this or higher can no longer make it into the top K (given
+    // that their sequence nos. exceed those of the moves offered so far)
+    int threshold() {
+        return size < k? Integer.MAX_VALUE: scores[0];
+    }
+
+    // Offer all the moves kept by other (with their sequence nos.)
+    void join(TopKMoves other) {
+        Integer[] order = other.sortedIndexes();
+        for (int i: order)
+            offerAt(other.seqs[i], other.scores[i], other.types[i], other.parents[i],
+                    other.as[i], other.bs[i], other.cs[i], other.ds[i], other.prebuilt[i]);
+        numOffered += other.numOffered - other.size;
+    }
+
+    static boolean worse(int score1, long order1, int score2, long order2) {
+        return score1 > score2 || score1 == score2 && order1 > order2;
+    }
+
+    void siftUp(int i, int score, long order, byte type, int parent, int a, int b, int c, int d, State s) {
+        while (i > 0) {
+            int up = (i-1) >> 1;
+            if (!worse(score, order, scores[up], seqs[up]))
+                break;
+            move(up, i);
+            i = up;
+        }
+        set(i, score, order, type, parent, a, b, c, d, s);
+    }
+
+    void siftDown(int i, int score, long order, byte type, int parent, int a, int b, int c, int d, State s) {
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size)
+                break;
+            if (child+1 < size && worse(scores[child+1], seqs[child+1], scores[child], seqs[child]))
+                child++;
+            if (!worse(scores[child], seqs[child], score, order))
+                break;
+            move(child, i);
+            i = child;
+        }
+        set(i, score, order, type, parent, a, b, c, d, s);
+    }
+
+    void move(int from, int to) {
+        scores[to] = scores[from];
+        seqs[to] = seqs[from];
+        types[to] = types[from];
+        parents[to] = parents[from];
+        as[to] = as[from];
+        bs[to] = bs[from];
+        cs[to] = cs[from];
+        ds[to] = ds[from];
+        prebuilt[to] = prebuilt[from];
+    }
+
+    void set(int i, int score, long order, byte type, int parent, int a, int b, int c, int d, State s) {
+        scores[i] = score;
+        seqs[i] = order;
+        types[i] = type;
+        parents[i] = parent;
+        as[i] = a;
+        bs[i] = b;
+        cs[i] = c;
+        ds[i] = d;
+        prebuilt[i] = s;
+    }
+
+    // Materialize the kept moves applied on x, best first
+    List<State> toStates(State x) {
+        Integer[] order = sortedIndexes();
+
+        List<State> states = new ArrayList<>(size);
+        for (int i: order)
+            states.add(apply(x, i));
+        return states;
+    }
+
+    // Heap positions of the kept moves, best first
+    Integer[] sortedIndexes() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> scores[i]!=scores[j]?
+                Integer.compare(scores[i], scores[j]): Long.compare(seqs[i], seqs[j]));
+        return order;
+    }
+
+    // The sequence nos. of the kept moves, best first (i.e. in the order of toStates)
+    long[] sortedSeqs() {
+        Integer[] order = sortedIndexes();
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++)
+            sorted[i] = seqs[order[i]];
+        return sorted;
+    }
+
+    State apply(State x, int i) {
+        if (types[i] == PREBUILT)
+            return prebuilt[i];
+
+        Rect r = x.getBlock(parents[i]);
+        List<Rect> children = types[i] == SPIRAL?
+                r.spiralSplit(as[i], bs[i], cs[i], ds[i]):
+                r.biSectionSplit(types[i] == BISECT_V, as[i]);
+
+        State next = new State(x, r, children);
+        if (x.problem.checkScore && next.getScore() != scores[i])
+            throw new IllegalStateException(
+                    String.format("Predicted score %d != actual score %d for state %s", scores[i], next.getScore(), next));
+        return next;
+    }
+}
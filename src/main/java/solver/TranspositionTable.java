@@ -0,0 +1,69 @@
+package solver;
+
+// States keyed on their layout up to the 8 symmetries of the square (see State.layoutKey),
+// used to remember which layouts have been expanded already.
+//
+// Unbounded by default. With a capacity (as under queue.policy=evict) the table is aged instead:
+// once the latest layouts reach maxStates or maxBytes they become the old generation, dropping the
+// one before, so that at most twice the capacity is remembered. A layout forgotten this way may
+// be expanded again, which costs time but not correctness.
+public class TranspositionTable {
+    static class Generation extends StateMap {
+        long bytes;
+
+        @Override
+        long key(State x) { return x.layoutKey(); }
+
+        @Override
+        boolean equivalent(State a, State b) { return a.sameLayout(b); }
+    }
+
+    final int maxStates;    // per generation, 0 for no limit
+    final long maxBytes;    // per generation, 0 for no limit
+    Generation young = new Generation();
+    Generation old;         // null until the table is first aged
+    int numAged;
+
+    TranspositionTable() {
+        this(0, 0);
+    }
+
+    TranspositionTable(int maxStates, long maxBytes) {
+        this.maxStates = maxStates;
+        this.maxBytes = maxBytes;
+    }
+
+    // Approximate #bytes a remembered state takes up: the object, its blocks array (which the
+    // table keeps alive once the state has left the queue) and its share of the StateMap
+    static long footprint(State x) {
+        long blocks = (16 + 4L*x.blocks.length + 7) & ~7L;
+        return 48 + blocks + 24;
+    }
+
+    State get(State x) {
+        State seen = young.get(x);
+        return seen == null && old != null? old.get(x): seen;
+    }
+
+    // Store x unless a state of the same layout is present already (which is returned instead)
+    State putIfAbsent(State x) {
+        State seen = get(x);
+        if (seen != null)
+            return seen;
+        young.putIfAbsent(x);
+        young.bytes += footprint(x);
+        if (maxStates > 0 && young.size() >= maxStates || maxBytes > 0 && young.bytes >= maxBytes)
+            age();
+        return null;
+    }
+
+    void age() {
+        old = young;
+        young = new Generation();
+        numAged++;
+    }
+
+    int size() { return young.size() + (old == null? 0: old.size()); }
+
+    long bytes() { return young.bytes + (old == null? 0: old.bytes); }
+}
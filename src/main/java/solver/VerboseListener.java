@@ -0,0 +1,66 @@
+package solver;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+// The detailed per-state trace on stdout that the search used to print unconditionally
+public class VerboseListener implements SearchListener {
+
+    @Override
+    public void onMaxDepth(State x) {
+        System.out.println("MAX-DEPTH exceeded: Skipping state " + x.toString());
+    }
+
+    @Override
+    public void onVisited(State x, State removed, int queueSize) {
+        System.out.println("Done visiting a feasible state " + x.toString());
+        System.out.println("State removed: " + removed + " #states = " + queueSize);
+    }
+
+    @Override
+    public void onGenerated(State x, Phase generator, int numChildren) {
+        if (generator == Phase.SPIRAL)
+            System.out.println("Added " + numChildren + " states as spiral transformation");
+        else if (generator == Phase.MERGE)
+            System.out.println("Added " + numChildren + " merged states");
+    }
+
+    @Override
+    public void onSelected(State x, int numCandidates, List<State> topK) {
+        System.out.println("Total states to select from: " + numCandidates);
+        List<Integer> scores = topK.stream()
+                .map(State::getScore)
+                .collect(Collectors.toList());
+        System.out.println("Selected scores of top states: " + scores);
+    }
+
+    @Override
+    public void onInfeasible(State x, boolean admitted) {
+        System.out.println(String.format("State [%s] is infeasible", x.toString()));
+    }
+
+    @Override
+    public void onDuplicate(State x, State seen) {
+        System.out.println(
+            String.format(
+                "State [%s] not stored because it is equivalent to a stored state [%s]",
+                x.toString(), seen.toString()));
+    }
+
+    @Override
+    public void onTransposition(State x, State seen) {
+        if (seen != null)
+            System.out.println(
+                String.format(
+                    "State [%s] not expanded because its layout is a symmetric copy of an expanded state [%s]",
+                    x.toString(), seen.toString()));
+    }
+
+    @Override
+    public void onPruned(State x, boolean evicted) {
+        System.out.println(
+            String.format(
+                "State [%s] %s because it can't lead to a better state than the best one",
+                x.toString(), evicted? "evicted": "not stored"));
+    }
+}